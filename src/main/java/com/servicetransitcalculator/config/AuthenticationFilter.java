@@ -6,6 +6,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpStatus;
@@ -18,17 +19,28 @@ import java.util.List;
 import java.util.Set;
 
 /**
- * Filter to handle API authentication via token validation.
+ * Filter to handle API authentication via token validation. Admin endpoints additionally
+ * require one of the admin tokens.
  */
 @Configuration
 public class AuthenticationFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(AuthenticationFilter.class);
 
+    private static final String ADMIN_PATH = "/admin";
+
     private final Set<String> validTokens;
+    private final Set<String> adminTokens;
+
+    public AuthenticationFilter(List<String> tokens) {
+        this(tokens, List.of());
+    }
 
-    public AuthenticationFilter(@Value("${servicetransitcalculator.api.tokens}") List<String> tokens) {
+    @Autowired
+    public AuthenticationFilter(@Value("${servicetransitcalculator.api.tokens}") List<String> tokens,
+                                @Value("${servicetransitcalculator.admin.tokens:}") List<String> adminTokens) {
         this.validTokens = Collections.unmodifiableSet(new HashSet<>(tokens));
+        this.adminTokens = Collections.unmodifiableSet(new HashSet<>(adminTokens));
     }
 
     @Override
@@ -43,14 +55,34 @@ public class AuthenticationFilter extends OncePerRequestFilter {
             return;
         }
 
+        if (isAdminPath(request) && !adminTokens.contains(stripBearer(authorizationHeader))) {
+            logger.warn("Forbidden admin access attempt: {}", request.getRequestURI());
+            response.sendError(HttpStatus.FORBIDDEN.value(), "Forbidden: Admin token required");
+            return;
+        }
+
         logger.debug("Authorized request: {}", request.getRequestURI());
         filterChain.doFilter(request, response);
     }
 
+    // Checks the container-decoded path rather than the raw URI, which can hide the prefix
+    // behind path parameters (/admin;x/...) or percent-encoding (/%61dmin/...)
+    private static boolean isAdminPath(HttpServletRequest request) {
+        String servletPath = request.getServletPath();
+        String pathInfo = request.getPathInfo();
+        String path = (servletPath == null ? "" : servletPath) + (pathInfo == null ? "" : pathInfo);
+        return path.equals(ADMIN_PATH) || path.startsWith(ADMIN_PATH + "/");
+    }
+
     private boolean isTokenValid(String token) {
+        String bareToken = stripBearer(token);
+        return validTokens.contains(bareToken) || adminTokens.contains(bareToken);
+    }
+
+    private static String stripBearer(String token) {
         if (token != null && token.startsWith("Bearer ")) {
             token = token.substring(7); // Remove "Bearer " prefix
         }
-        return validTokens.contains(token);
+        return token;
     }
 }
\ No newline at end of file
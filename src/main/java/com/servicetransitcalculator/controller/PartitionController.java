@@ -0,0 +1,43 @@
+package com.servicetransitcalculator.controller;
+
+import com.servicetransitcalculator.model.Trip;
+import com.servicetransitcalculator.service.TransitCalculationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+/**
+ * Node-to-node endpoints used in partitioned mode. The coordinator sends each node the
+ * rows for the PANs it owns, receiving the rows the node rejected in reply, and later
+ * collects the node's priced trips.
+ */
+@RestController
+@RequestMapping("/transit/partition")
+public class PartitionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionController.class);
+
+    private final TransitCalculationService service;
+
+    public PartitionController(TransitCalculationService service) {
+        this.service = service;
+    }
+
+    @PostMapping(value = "/taps", consumes = "text/csv", produces = "text/csv")
+    public ResponseEntity<byte[]> receiveTaps(@RequestParam("batch") String batchId,
+                                              @RequestParam("partition") int partition,
+                                              @RequestBody byte[] csv) {
+        logger.info("Request received: Process partition {} of batch {} ({} bytes).", partition, batchId, csv.length);
+        return ResponseEntity.ok(service.processPartition(batchId, partition, new ByteArrayInputStream(csv)));
+    }
+
+    @GetMapping("/trips")
+    public ResponseEntity<List<Trip>> getTrips() {
+        logger.info("Request received: Trips held by this node.");
+        return ResponseEntity.ok(service.getTrips());
+    }
+}
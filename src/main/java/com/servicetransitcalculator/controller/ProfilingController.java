@@ -0,0 +1,53 @@
+package com.servicetransitcalculator.controller;
+
+import com.servicetransitcalculator.service.impl.ProfilingRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.File;
+
+/**
+ * Admin endpoints for on-demand Java Flight Recorder profiling of the processing pipeline.
+ * Only tokens listed in servicetransitcalculator.admin.tokens may call them.
+ */
+@RestController
+@RequestMapping("/admin/profiling")
+public class ProfilingController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProfilingController.class);
+
+    private final ProfilingRecorder recorder;
+
+    public ProfilingController(ProfilingRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @PostMapping("/start")
+    public ResponseEntity<String> start(@RequestParam(defaultValue = "false") boolean fareLookups) {
+        logger.info("Request received: Start flight recording (fare lookups {}).", fareLookups);
+        recorder.start(fareLookups);
+        return ResponseEntity.ok("Recording started.");
+    }
+
+    @PostMapping("/stop")
+    public ResponseEntity<String> stop() {
+        logger.info("Request received: Stop flight recording.");
+        recorder.stop();
+        return ResponseEntity.ok("Recording stopped.");
+    }
+
+    @GetMapping("/recording")
+    public ResponseEntity<Resource> download() {
+        logger.info("Request received: Download flight recording.");
+        File file = recorder.dump();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + file.getName())
+                .header(HttpHeaders.CONTENT_TYPE, "application/octet-stream")
+                .body(new FileSystemResource(file));
+    }
+}
@@ -1,16 +1,29 @@
 package com.servicetransitcalculator.controller;
 
+import com.servicetransitcalculator.model.DownloadArtifact;
+import com.servicetransitcalculator.model.TapPair;
+import com.servicetransitcalculator.model.Trip;
+import com.servicetransitcalculator.model.UploadStatus;
 import com.servicetransitcalculator.service.TransitCalculationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
 
 /**
  * Controller for handling transit calculation endpoints.
@@ -21,10 +34,25 @@ public class TransitCalculatorController {
 
     private static final Logger logger = LoggerFactory.getLogger(TransitCalculatorController.class);
 
+    // Tomcat request attributes for sendfile support
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
     private final TransitCalculationService service;
 
-    public TransitCalculatorController(TransitCalculationService service) {
+    // Latency histogram for synchronous fare requests, exposed via /actuator/metrics/transit.fare.latency
+    private final Timer fareLatency;
+
+    public TransitCalculatorController(TransitCalculationService service, MeterRegistry meterRegistry) {
         this.service = service;
+        this.fareLatency = Timer.builder("transit.fare.latency")
+                .description("Time taken to price a batch of tap pairs")
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(Duration.ofMillis(2))
+                .register(meterRegistry);
     }
 
     @PostMapping("/upload")
@@ -36,27 +64,127 @@ public class TransitCalculatorController {
             throw new IllegalArgumentException("File is empty. Please upload a valid CSV file.");
         }
 
-        service.processCsv(file);
-        logger.info("CSV file '{}' processed successfully.", file.getOriginalFilename());
-        return ResponseEntity.ok("CSV processed successfully.");
+        String uploadId = service.processCsv(file);
+        logger.info("CSV file '{}' processed successfully as upload {}.", file.getOriginalFilename(), uploadId);
+        return ResponseEntity.ok()
+                .header("X-Upload-Id", uploadId)
+                .body("CSV processed successfully. Upload ID: " + uploadId);
+    }
+
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<UploadStatus> getUploadStatus(@PathVariable String uploadId) {
+        logger.info("Request received: Status of upload {}.", uploadId);
+        return ResponseEntity.ok(service.getUploadStatus(uploadId));
+    }
+
+    @GetMapping("/uploads/{uploadId}/rejected")
+    public ResponseEntity<Resource> downloadRejectedRecords(@PathVariable String uploadId) {
+        logger.info("Request received: Download rejected records for upload {}.", uploadId);
+
+        if (!service.getUploadStatus(uploadId).isRejectedReportReady()) {
+            logger.info("Rejected records for upload {} are still being written.", uploadId);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).build();
+        }
+
+        File file = service.getRejectedRecords(uploadId);
+        if (!file.exists()) {
+            logger.warn("Rejected records file for upload {} is not available.", uploadId);
+            throw new IllegalArgumentException("Rejected records file is not available.");
+        }
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + file.getName())
+                .header(HttpHeaders.CONTENT_TYPE, "text/csv")
+                .body(new FileSystemResource(file));
+    }
+
+    @PostMapping("/fare")
+    public ResponseEntity<List<Trip>> calculateFares(@RequestBody List<TapPair> pairs) {
+        // Kept at DEBUG: this endpoint sits on the point-of-sale latency path
+        logger.debug("Request received: Calculate fares for {} tap pairs.", pairs.size());
+
+        List<Trip> result = fareLatency.record(() -> service.calculateFares(pairs));
+        return ResponseEntity.ok(result);
     }
 
     @GetMapping("/download")
-    public ResponseEntity<Resource> downloadCsv() {
+    public void downloadCsv(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                            HttpServletRequest request,
+                            HttpServletResponse response) throws IOException {
         logger.info("Request received: Download processed CSV file.");
 
-        File file = service.getProcessedCsv();
+        // Answer unchanged-result polls before touching the cached artifact
+        long version = service.getResultVersion();
+        if (version != DownloadArtifact.UNVERSIONED && etagMatches(ifNoneMatch, version)) {
+            logger.info("Processed results unchanged at version {}.", version);
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            response.setHeader(HttpHeaders.ETAG, DownloadArtifact.etag(version, service.isDownloadGzipped() && acceptsGzip(acceptEncoding)));
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            return;
+        }
+
+        DownloadArtifact artifact = service.getDownloadArtifact();
+        File csvFile = artifact.getCsvFile();
 
-        if (file == null || !file.exists()) {
+        if (csvFile == null || !csvFile.exists()) {
             logger.warn("No processed file available for download.");
             throw new IllegalArgumentException("No processed file available for download.");
         }
 
-        logger.info("Processed file '{}' ready for download.", file.getName());
+        boolean gzip = artifact.getGzipFile() != null && acceptsGzip(acceptEncoding);
+        File body = gzip ? artifact.getGzipFile() : csvFile;
+        logger.info("Processed file '{}' ready for download (version {}, gzip {}).", csvFile.getName(), artifact.getVersion(), gzip);
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + file.getName())
-                .header(HttpHeaders.CONTENT_TYPE, "application/octet-stream")
-                .body(new FileSystemResource(file));
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + csvFile.getName());
+        response.setContentType("application/octet-stream");
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        if (artifact.isVersioned()) {
+            response.setHeader(HttpHeaders.ETAG, DownloadArtifact.etag(artifact.getVersion(), gzip));
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        sendFile(body, request, response);
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    // Matches either representation of the version, since both carry the same results
+    private static boolean etagMatches(String ifNoneMatch, long version) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String plain = DownloadArtifact.etag(version, false);
+        String gzip = DownloadArtifact.etag(version, true);
+        for (String tag : ifNoneMatch.split(",")) {
+            String candidate = tag.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(plain) || candidate.equals(gzip) || candidate.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Zero-copy only through Tomcat sendfile where the connector supports it; otherwise the
+    // servlet API offers no file channel, so the file is copied through a user-space buffer
+    private static void sendFile(File file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = file.length();
+        response.setContentLengthLong(length);
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.getAbsolutePath());
+            request.setAttribute(SENDFILE_START_ATTR, 0L);
+            request.setAttribute(SENDFILE_END_ATTR, length);
+            return;
+        }
+
+        Files.copy(file.toPath(), response.getOutputStream());
     }
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+package com.servicetransitcalculator.exception;
+
+public class RecordingStateException extends RuntimeException {
+    public RecordingStateException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.servicetransitcalculator.exception;
+
+public class UploadNotFoundException extends RuntimeException {
+    public UploadNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,52 @@
+package com.servicetransitcalculator.model;
+
+import java.io.File;
+import java.util.UUID;
+
+/**
+ * Represents the serialized trip results for one result version, with an optional
+ * precompressed gzip copy.
+ */
+public class DownloadArtifact {
+
+    // Marks artifacts that are not versioned and must not be cached by clients
+    public static final long UNVERSIONED = -1;
+
+    // Result versions restart at zero with the process and are not shared between replicas,
+    // so entity tags carry a per-process epoch to keep them from colliding
+    private static final String EPOCH = UUID.randomUUID().toString().substring(0, 8);
+
+    private final long version;
+    private final File csvFile;
+    private final File gzipFile;
+
+    public DownloadArtifact(long version, File csvFile, File gzipFile) {
+        this.version = version;
+        this.csvFile = csvFile;
+        this.gzipFile = gzipFile;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public File getCsvFile() {
+        return csvFile;
+    }
+
+    public File getGzipFile() {
+        return gzipFile;
+    }
+
+    public boolean isVersioned() {
+        return version != UNVERSIONED;
+    }
+
+    /**
+     * Returns the entity tag for this version in this process, distinguishing the gzip
+     * representation.
+     */
+    public static String etag(long version, boolean gzip) {
+        return "\"" + EPOCH + "-v" + version + (gzip ? "-gzip" : "") + "\"";
+    }
+}
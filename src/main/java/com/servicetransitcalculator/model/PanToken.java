@@ -0,0 +1,68 @@
+package com.servicetransitcalculator.model;
+
+/**
+ * Represents a card number after tokenization: a keyed 64-bit token used for grouping and
+ * indexing, plus the length and last four digits needed to print it masked. The raw PAN is
+ * not retained.
+ */
+public final class PanToken {
+
+    private static final int VISIBLE_DIGITS = 4;
+
+    private final long value;
+    private final short lastDigits;
+    private final byte length;
+
+    public PanToken(long value, int lastDigits, int length) {
+        this.value = value;
+        this.lastDigits = (short) lastDigits;
+        this.length = (byte) length;
+    }
+
+    /**
+     * Rebuilds a token from its value and masked form, as written by {@link #masked()}.
+     */
+    public static PanToken fromMasked(long value, String maskedPan) {
+        int length = maskedPan.length();
+        int lastDigits = length > VISIBLE_DIGITS ? Integer.parseInt(maskedPan.substring(length - VISIBLE_DIGITS)) : 0;
+        return new PanToken(value, lastDigits, length);
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    public int getLastDigits() {
+        return lastDigits;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the PAN with all but its last four digits replaced by '*'. PANs of four digits
+     * or fewer are masked entirely.
+     */
+    public String masked() {
+        return masked(lastDigits, length);
+    }
+
+    static String masked(int lastDigits, int length) {
+        if (length <= VISIBLE_DIGITS) {
+            return "*".repeat(length);
+        }
+        return "*".repeat(length - VISIBLE_DIGITS) + String.format("%04d", lastDigits);
+    }
+
+    /**
+     * Masks a raw, possibly malformed PAN value for logs and reports.
+     */
+    public static String mask(String pan) {
+        if (pan == null) {
+            return null;
+        }
+        int visibleFrom = pan.length() > VISIBLE_DIGITS ? pan.length() - VISIBLE_DIGITS : pan.length();
+        return "*".repeat(visibleFrom) + pan.substring(visibleFrom);
+    }
+}
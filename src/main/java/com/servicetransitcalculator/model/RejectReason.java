@@ -0,0 +1,13 @@
+package com.servicetransitcalculator.model;
+
+/**
+ * Reason codes for CSV rows rejected during parsing.
+ */
+public enum RejectReason {
+    INVALID_LENGTH,
+    INVALID_ID,
+    INVALID_DATE,
+    INVALID_TAP_TYPE,
+    INVALID_FIELD,
+    INVALID_PAN
+}
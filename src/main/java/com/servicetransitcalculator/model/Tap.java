@@ -15,16 +15,22 @@ public class Tap {
     private final String stopId;
     private final String companyId;
     private final String busId;
-    private final String pan;
+    // Tokenized PAN, kept as primitives so taps carry no per-card objects
+    private final long panToken;
+    private final short panLastDigits;
+    private final byte panLength;
 
-    public Tap(Long id, LocalDateTime dateTimeUtc, TapType tapType, String stopId, String companyId, String busId, String pan) {
+    public Tap(Long id, LocalDateTime dateTimeUtc, TapType tapType, String stopId, String companyId, String busId, PanToken pan) {
         this.id = Objects.requireNonNull(id, "ID must not be null.");
         this.dateTimeUtc = Objects.requireNonNull(dateTimeUtc, "DateTime must not be null.");
         this.tapType = Objects.requireNonNull(tapType, "TapType must not be null.");
         this.stopId = Objects.requireNonNull(stopId, "Stop ID must not be null.");
         this.companyId = companyId;
         this.busId = busId;
-        this.pan = pan;
+        Objects.requireNonNull(pan, "PAN must not be null.");
+        this.panToken = pan.getValue();
+        this.panLastDigits = (short) pan.getLastDigits();
+        this.panLength = (byte) pan.getLength();
     }
 
     public Long getId() {
@@ -51,8 +57,16 @@ public class Tap {
         return busId;
     }
 
-    public String getPan() {
-        return pan;
+    public long getPanToken() {
+        return panToken;
+    }
+
+    public PanToken getPan() {
+        return new PanToken(panToken, panLastDigits, panLength);
+    }
+
+    public String getMaskedPan() {
+        return PanToken.masked(panLastDigits, panLength);
     }
 
     public enum TapType {
@@ -0,0 +1,93 @@
+package com.servicetransitcalculator.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Represents an ON/OFF tap pair submitted for synchronous fare calculation.
+ * A pair without an OFF tap is priced as an incomplete trip.
+ */
+public class TapPair {
+    private String pan;
+    private String companyId;
+    private String busId;
+    private String onStopId;
+    private LocalDateTime onDateTimeUtc;
+    private String offStopId;
+    private LocalDateTime offDateTimeUtc;
+
+    // No-argument constructor (required for JSON binding)
+    public TapPair() {}
+
+    // Parameterized constructor
+    public TapPair(String pan, String companyId, String busId, String onStopId, LocalDateTime onDateTimeUtc,
+                   String offStopId, LocalDateTime offDateTimeUtc) {
+        this.pan = pan;
+        this.companyId = companyId;
+        this.busId = busId;
+        this.onStopId = onStopId;
+        this.onDateTimeUtc = onDateTimeUtc;
+        this.offStopId = offStopId;
+        this.offDateTimeUtc = offDateTimeUtc;
+    }
+
+    // Getters and Setters
+    public String getPan() {
+        return pan;
+    }
+
+    public void setPan(String pan) {
+        this.pan = pan;
+    }
+
+    public String getCompanyId() {
+        return companyId;
+    }
+
+    public void setCompanyId(String companyId) {
+        this.companyId = companyId;
+    }
+
+    public String getBusId() {
+        return busId;
+    }
+
+    public void setBusId(String busId) {
+        this.busId = busId;
+    }
+
+    public String getOnStopId() {
+        return onStopId;
+    }
+
+    public void setOnStopId(String onStopId) {
+        this.onStopId = onStopId;
+    }
+
+    public LocalDateTime getOnDateTimeUtc() {
+        return onDateTimeUtc;
+    }
+
+    public void setOnDateTimeUtc(LocalDateTime onDateTimeUtc) {
+        this.onDateTimeUtc = onDateTimeUtc;
+    }
+
+    public String getOffStopId() {
+        return offStopId;
+    }
+
+    public void setOffStopId(String offStopId) {
+        this.offStopId = offStopId;
+    }
+
+    public LocalDateTime getOffDateTimeUtc() {
+        return offDateTimeUtc;
+    }
+
+    public void setOffDateTimeUtc(LocalDateTime offDateTimeUtc) {
+        this.offDateTimeUtc = offDateTimeUtc;
+    }
+
+    public boolean hasTapOff() {
+        return offStopId != null && offDateTimeUtc != null;
+    }
+}
@@ -0,0 +1,90 @@
+package com.servicetransitcalculator.model;
+
+import java.util.Map;
+
+/**
+ * Represents the processing status of a single CSV upload, including per-reason counts
+ * of rejected rows.
+ */
+public class UploadStatus {
+    private String uploadId;
+    private String state;
+    private long rowsRead;
+    private long rowsRejected;
+    private Map<RejectReason, Long> rejectedByReason;
+    private long rejectedRecordsDropped;
+    private boolean rejectedReportReady;
+
+    // No-argument constructor (required for JSON binding)
+    public UploadStatus() {}
+
+    // Parameterized constructor
+    public UploadStatus(String uploadId, String state, long rowsRead, long rowsRejected,
+                        Map<RejectReason, Long> rejectedByReason, long rejectedRecordsDropped,
+                        boolean rejectedReportReady) {
+        this.uploadId = uploadId;
+        this.state = state;
+        this.rowsRead = rowsRead;
+        this.rowsRejected = rowsRejected;
+        this.rejectedByReason = rejectedByReason;
+        this.rejectedRecordsDropped = rejectedRecordsDropped;
+        this.rejectedReportReady = rejectedReportReady;
+    }
+
+    // Getters and Setters
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public void setRowsRead(long rowsRead) {
+        this.rowsRead = rowsRead;
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public void setRowsRejected(long rowsRejected) {
+        this.rowsRejected = rowsRejected;
+    }
+
+    public Map<RejectReason, Long> getRejectedByReason() {
+        return rejectedByReason;
+    }
+
+    public void setRejectedByReason(Map<RejectReason, Long> rejectedByReason) {
+        this.rejectedByReason = rejectedByReason;
+    }
+
+    public long getRejectedRecordsDropped() {
+        return rejectedRecordsDropped;
+    }
+
+    public void setRejectedRecordsDropped(long rejectedRecordsDropped) {
+        this.rejectedRecordsDropped = rejectedRecordsDropped;
+    }
+
+    public boolean isRejectedReportReady() {
+        return rejectedReportReady;
+    }
+
+    public void setRejectedReportReady(boolean rejectedReportReady) {
+        this.rejectedReportReady = rejectedReportReady;
+    }
+}
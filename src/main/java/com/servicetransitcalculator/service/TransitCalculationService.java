@@ -1,9 +1,31 @@
 package com.servicetransitcalculator.service;
 
+import com.servicetransitcalculator.model.DownloadArtifact;
+import com.servicetransitcalculator.model.TapPair;
+import com.servicetransitcalculator.model.Trip;
+import com.servicetransitcalculator.model.UploadStatus;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.File;
+import java.io.InputStream;
+import java.util.List;
 
 public interface TransitCalculationService {
-    void processCsv(MultipartFile file);
+    String processCsv(MultipartFile file);
     File getProcessedCsv();
+    DownloadArtifact getDownloadArtifact();
+    long getResultVersion();
+    /**
+     * Returns whether downloads are also available gzip-compressed, so a 304 can name the
+     * representation the client would have received.
+     */
+    boolean isDownloadGzipped();
+    List<Trip> calculateFares(List<TapPair> pairs);
+    UploadStatus getUploadStatus(String uploadId);
+    File getRejectedRecords(String uploadId);
+    /**
+     * Pairs and prices one partition of a batch sent by the coordinator and returns the rows
+     * it rejected as CSV. A partition of a batch that was already accepted is ignored.
+     */
+    byte[] processPartition(String batchId, int partition, InputStream csv);
+    List<Trip> getTrips();
 }
@@ -0,0 +1,310 @@
+package com.servicetransitcalculator.service.impl;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+import com.servicetransitcalculator.model.PanToken;
+import com.servicetransitcalculator.model.RejectReason;
+import com.servicetransitcalculator.model.Tap;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Keeps resumable state for long-running uploads on local disk. Each upload gets its own
+ * directory holding the spooled input, append-only CSV segments of parsed taps and a small
+ * progress file naming the last consistent checkpoint.
+ * <p>
+ * The directory belongs to one instance: by default it sits under the user's home and is
+ * named after the server port, and it is created readable by its owner only. An instance
+ * spools and resumes uploads only while it holds the directory's lock file, so two processes
+ * configured with the same directory never resume, price and delete the same upload. Uploads smaller
+ * than {@code min-size-mb} are not spooled at all; they are quick to upload again. A coordinator in partitioned mode
+ * keeps only the spooled input: it splits the upload again on resume, and the nodes ignore
+ * partitions they have already accepted.
+ */
+@Component
+public class CheckpointStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointStore.class);
+
+    private static final String INPUT_FILE = "input.csv";
+    private static final String PROGRESS_FILE = "checkpoint.properties";
+    private static final String SEGMENT_PREFIX = "taps-";
+    private static final String SEGMENT_SUFFIX = ".csv";
+    private static final String LOCK_FILE = "instance.lock";
+
+    private final boolean enabled;
+    private final File baseDir;
+    private final long intervalRows;
+    private final long minBytes;
+
+    // Held from first use until shutdown; null while another process owns the directory
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private boolean lockWarned;
+
+    public CheckpointStore(boolean enabled, String baseDir, long intervalRows) {
+        this(enabled, baseDir, intervalRows, 0);
+    }
+
+    @Autowired
+    public CheckpointStore(@Value("${servicetransitcalculator.checkpoint.enabled:true}") boolean enabled,
+                           @Value("${servicetransitcalculator.checkpoint.dir:${user.home}/.service-transit-calculator/checkpoints/${server.port:8080}}") String baseDir,
+                           @Value("${servicetransitcalculator.checkpoint.interval-rows:50000}") long intervalRows,
+                           @Value("${servicetransitcalculator.checkpoint.min-size-mb:4}") long minSizeMb) {
+        this.enabled = enabled;
+        this.baseDir = new File(baseDir);
+        this.intervalRows = intervalRows;
+        this.minBytes = minSizeMb * 1024 * 1024;
+    }
+
+    public static CheckpointStore disabled() {
+        return new CheckpointStore(false, System.getProperty("java.io.tmpdir"), Long.MAX_VALUE);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns whether an upload of the given size is worth spooling so it can be resumed,
+     * and this instance owns the checkpoint directory.
+     */
+    public boolean shouldCheckpoint(long uploadBytes) {
+        return enabled && uploadBytes >= minBytes && acquireLock();
+    }
+
+    public long getIntervalRows() {
+        return intervalRows;
+    }
+
+    /**
+     * Copies the uploaded input to the upload's checkpoint directory and returns the copy.
+     */
+    File spool(String uploadId, InputStream input) throws IOException {
+        createPrivateDirectory(baseDir);
+        File dir = jobDir(uploadId);
+        createPrivateDirectory(dir);
+        File spooled = new File(dir, INPUT_FILE);
+        Files.copy(input, spooled.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return spooled;
+    }
+
+    File getInput(String uploadId) {
+        return new File(jobDir(uploadId), INPUT_FILE);
+    }
+
+    /**
+     * Records a checkpoint. Only the taps parsed since the previous checkpoint are written;
+     * the progress file is replaced atomically afterwards so a crash mid-write leaves the
+     * previous checkpoint intact.
+     */
+    void save(String uploadId, long rowsRead, long[] rejectedByReason, List<Tap> newTaps) throws IOException {
+        File dir = jobDir(uploadId);
+
+        File segment = new File(dir, SEGMENT_PREFIX + rowsRead + SEGMENT_SUFFIX);
+        try (CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(new FileOutputStream(segment), StandardCharsets.UTF_8))) {
+            for (Tap tap : newTaps) {
+                csvWriter.writeNext(new String[]{
+                        String.valueOf(tap.getId()),
+                        tap.getDateTimeUtc().format(TransitCalculationServiceImpl.DATE_FORMATTER),
+                        tap.getTapType().name(),
+                        tap.getStopId(),
+                        tap.getCompanyId(),
+                        tap.getBusId(),
+                        String.valueOf(tap.getPanToken()),
+                        tap.getMaskedPan()
+                });
+            }
+        }
+
+        Properties progress = new Properties();
+        progress.setProperty("rowsRead", String.valueOf(rowsRead));
+        for (RejectReason reason : RejectReason.values()) {
+            progress.setProperty("rejected." + reason.name(), String.valueOf(rejectedByReason[reason.ordinal()]));
+        }
+        File tmp = new File(dir, PROGRESS_FILE + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            progress.store(out, "Checkpoint for upload " + uploadId);
+        }
+        Files.move(tmp.toPath(), new File(dir, PROGRESS_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        logger.debug("Checkpointed upload {} at row {} ({} new taps).", uploadId, rowsRead, newTaps.size());
+    }
+
+    /**
+     * Loads the last consistent checkpoint, or an empty one if the upload never reached one.
+     */
+    JobCheckpoint load(String uploadId) throws IOException {
+        File dir = jobDir(uploadId);
+        File progressFile = new File(dir, PROGRESS_FILE);
+        if (!progressFile.exists()) {
+            return JobCheckpoint.fromStart();
+        }
+
+        Properties progress = new Properties();
+        try (InputStream in = new FileInputStream(progressFile)) {
+            progress.load(in);
+        }
+        long rowsRead = Long.parseLong(progress.getProperty("rowsRead"));
+        long[] rejectedByReason = new long[RejectReason.values().length];
+        for (RejectReason reason : RejectReason.values()) {
+            rejectedByReason[reason.ordinal()] = Long.parseLong(progress.getProperty("rejected." + reason.name(), "0"));
+        }
+
+        // Segments past rowsRead were written after the last completed checkpoint; ignore them
+        List<Long> segments = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        for (File file : files == null ? new File[0] : files) {
+            String name = file.getName();
+            long segmentRows = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            if (segmentRows <= rowsRead) {
+                segments.add(segmentRows);
+            }
+        }
+        Collections.sort(segments);
+
+        List<Tap> taps = new ArrayList<>();
+        for (long segmentRows : segments) {
+            File segment = new File(dir, SEGMENT_PREFIX + segmentRows + SEGMENT_SUFFIX);
+            try (CSVReader csvReader = new CSVReader(new InputStreamReader(new FileInputStream(segment), StandardCharsets.UTF_8))) {
+                String[] row;
+                while ((row = csvReader.readNext()) != null) {
+                    taps.add(readTap(row));
+                }
+            } catch (CsvValidationException | RuntimeException e) {
+                throw new IOException("Unreadable checkpoint segment " + segment, e);
+            }
+        }
+        return new JobCheckpoint(rowsRead, rejectedByReason, taps);
+    }
+
+    // Segments hold taps after validation and tokenization, so any failure here means a damaged file
+    private static Tap readTap(String[] row) {
+        if (row.length != 8) {
+            throw new IllegalArgumentException("Invalid checkpoint row length: " + row.length);
+        }
+        return new Tap(
+                Long.parseLong(row[0]),
+                LocalDateTime.parse(row[1], TransitCalculationServiceImpl.DATE_FORMATTER),
+                Tap.TapType.fromString(row[2]),
+                row[3],
+                row[4],
+                row[5],
+                PanToken.fromMasked(Long.parseLong(row[6]), row[7])
+        );
+    }
+
+    /**
+     * Returns the IDs of uploads that were spooled but never completed, or none if another
+     * process holds this directory.
+     */
+    List<String> unfinishedUploads() {
+        if (!enabled || !baseDir.isDirectory() || !acquireLock()) {
+            return List.of();
+        }
+        File[] dirs = baseDir.listFiles(dir -> new File(dir, INPUT_FILE).exists());
+        List<String> uploadIds = new ArrayList<>();
+        for (File dir : dirs == null ? new File[0] : dirs) {
+            uploadIds.add(dir.getName());
+        }
+        return uploadIds;
+    }
+
+    void delete(String uploadId) {
+        Path dir = jobDir(uploadId).toPath();
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.warn("Failed to delete checkpoint directory {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private synchronized boolean acquireLock() {
+        if (lock != null) {
+            return true;
+        }
+        try {
+            createPrivateDirectory(baseDir);
+            lockChannel = FileChannel.open(new File(baseDir, LOCK_FILE).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lock = lockChannel.tryLock();
+        } catch (IOException | OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            closeLockChannel();
+            if (!lockWarned) {
+                logger.warn("Checkpoint directory {} is in use by another instance; uploads will not be checkpointed.", baseDir);
+                lockWarned = true;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (lock != null) {
+            try {
+                lock.release();
+            } catch (IOException e) {
+                logger.debug("Failed to release checkpoint lock: {}", e.getMessage());
+            }
+            lock = null;
+        }
+        closeLockChannel();
+    }
+
+    private void closeLockChannel() {
+        if (lockChannel != null) {
+            try {
+                lockChannel.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close checkpoint lock file: {}", e.getMessage());
+            }
+            lockChannel = null;
+        }
+    }
+
+    // Spooled uploads hold raw PANs, so only the owning user may read them
+    private static void createPrivateDirectory(File dir) throws IOException {
+        if (dir.isDirectory()) {
+            return;
+        }
+        if (!dir.mkdirs()) {
+            throw new IOException("Unable to create checkpoint directory " + dir);
+        }
+        try {
+            Files.setPosixFilePermissions(dir.toPath(), PosixFilePermissions.fromString("rwx------"));
+        } catch (UnsupportedOperationException e) {
+            logger.debug("Cannot restrict permissions of {} on this file system.", dir);
+        }
+    }
+
+    private File jobDir(String uploadId) {
+        return new File(baseDir, uploadId);
+    }
+}
@@ -0,0 +1,167 @@
+package com.servicetransitcalculator.service.impl;
+
+import com.servicetransitcalculator.model.DownloadArtifact;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the serialized download for the latest result version on disk, with an optional
+ * gzip copy, so repeat downloads are served without rebuilding the CSV. Each instance writes
+ * into a private directory of its own under the base directory, because result versions
+ * restart with the process and would otherwise name the same files on a shared host.
+ */
+@Component
+public class DownloadCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DownloadCache.class);
+
+    private static final String CSV_FILE = "trips.csv";
+
+    private static final String UNVERSIONED_DIR = "unversioned";
+
+    private static final String INSTANCE_DIR_PREFIX = "instance-";
+
+    // Unversioned files are deleted after this long; by then sendfile has long since opened them
+    private static final long UNVERSIONED_RETENTION_MS = 10 * 60 * 1000L;
+
+    /** Writes the CSV for a snapshot of the results. */
+    @FunctionalInterface
+    public interface ArtifactWriter {
+        void write(File file) throws IOException;
+    }
+
+    private final File baseDir;
+    private final boolean gzip;
+    private File instanceDir;
+    private DownloadArtifact cached;
+    private DownloadArtifact previous;
+
+    public DownloadCache(@Value("${servicetransitcalculator.download.cache-dir:${user.home}/.service-transit-calculator/downloads}") String baseDir,
+                         @Value("${servicetransitcalculator.download.gzip:true}") boolean gzip) {
+        this.baseDir = new File(baseDir);
+        this.gzip = gzip;
+    }
+
+    public static DownloadCache temporary() {
+        try {
+            return new DownloadCache(Files.createTempDirectory("transit-downloads").toString(), true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create download cache directory.", e);
+        }
+    }
+
+    /**
+     * Returns whether artifacts carry a gzip copy.
+     */
+    public boolean isGzipEnabled() {
+        return gzip;
+    }
+
+    /**
+     * Returns the artifact for the given version, writing it only if the cached one is older.
+     */
+    public synchronized DownloadArtifact get(long version, ArtifactWriter writer) throws IOException {
+        if (cached != null && cached.getVersion() == version && cached.getCsvFile().exists()) {
+            return cached;
+        }
+
+        File dir = new File(instanceDir(), "v" + version);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create download cache directory " + dir);
+        }
+        File csvFile = new File(dir, CSV_FILE);
+        writer.write(csvFile);
+
+        File gzipFile = null;
+        if (gzip) {
+            gzipFile = new File(dir, CSV_FILE + ".gz");
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(gzipFile)))) {
+                Files.copy(csvFile.toPath(), out);
+            }
+        }
+
+        // Keep one older version: sendfile opens the file only after the request handler returns
+        if (cached != null && cached.getVersion() != version) {
+            if (previous != null) {
+                delete(previous);
+            }
+            previous = cached;
+        }
+        cached = new DownloadArtifact(version, csvFile, gzipFile);
+        logger.info("Cached download for result version {} ({} bytes).", version, csvFile.length());
+        return cached;
+    }
+
+    /**
+     * Writes an artifact that cannot be cached, such as trips merged from the nodes, to a file
+     * of its own so concurrent downloads never share one. Files from earlier calls are
+     * removed once they are older than {@link #UNVERSIONED_RETENTION_MS}.
+     */
+    public DownloadArtifact writeUnversioned(ArtifactWriter writer) throws IOException {
+        File dir = new File(instanceDir(), UNVERSIONED_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create download directory " + dir);
+        }
+        long cutoff = System.currentTimeMillis() - UNVERSIONED_RETENTION_MS;
+        File[] stale = dir.listFiles(file -> file.lastModified() < cutoff);
+        for (File file : stale == null ? new File[0] : stale) {
+            file.delete();
+        }
+
+        File csvFile = File.createTempFile("trips-", ".csv", dir);
+        try {
+            writer.write(csvFile);
+        } catch (IOException | RuntimeException e) {
+            csvFile.delete();
+            throw e;
+        }
+        return new DownloadArtifact(DownloadArtifact.UNVERSIONED, csvFile, null);
+    }
+
+    /**
+     * Removes this instance's directory and everything cached in it.
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (instanceDir == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(instanceDir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            logger.debug("Failed to remove download directory {}: {}", instanceDir, e.getMessage());
+        }
+        instanceDir = null;
+        cached = null;
+        previous = null;
+    }
+
+    // Created on first use under a unique name; on POSIX file systems only the owning user may read it
+    private synchronized File instanceDir() throws IOException {
+        if (instanceDir == null) {
+            if (!baseDir.isDirectory() && !baseDir.mkdirs()) {
+                throw new IOException("Unable to create download cache directory " + baseDir);
+            }
+            instanceDir = Files.createTempDirectory(baseDir.toPath(), INSTANCE_DIR_PREFIX).toFile();
+        }
+        return instanceDir;
+    }
+
+    private static void delete(DownloadArtifact artifact) {
+        artifact.getCsvFile().delete();
+        if (artifact.getGzipFile() != null) {
+            artifact.getGzipFile().delete();
+        }
+        artifact.getCsvFile().getParentFile().delete();
+    }
+}
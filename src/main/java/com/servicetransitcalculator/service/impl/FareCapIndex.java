@@ -0,0 +1,252 @@
+package com.servicetransitcalculator.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+
+/**
+ * Running daily and weekly fare totals per card, used to stop charging once a cap is reached.
+ * Totals are kept in lock-striped open-addressing tables of primitives keyed by the 64-bit
+ * PAN token: one slot per card holds the day of its latest trip and the cents charged that
+ * day and that week, 20 bytes per slot or about 27 bytes per card at the maximum load factor.
+ * Tables are allocated up front for the configured capacity, about 53 MB for the default
+ * 2,000,000 cards. When a stripe fills up, entries whose week has passed are evicted; how far
+ * time has moved on is judged from trip dates, but never beyond the wall clock's date.
+ * Totals persist across uploads, and each stripe has its own lock so parallel workers do
+ * not contend on a global one.
+ */
+@Component
+public class FareCapIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(FareCapIndex.class);
+
+    private static final int STRIPES = 64;
+    private static final long EMPTY = 0L;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+    private static final int BYTES_PER_SLOT = Long.BYTES + 3 * Integer.BYTES;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    // Trip dates up to this far ahead of the UTC date count as current, for riders in later time zones
+    private static final int CLOCK_SKEW_DAYS = 1;
+
+    private final long dailyCapCents;
+    private final long weeklyCapCents;
+    private final Stripe[] stripes;
+    private final Clock clock;
+
+    @Autowired
+    public FareCapIndex(@Value("${servicetransitcalculator.farecap.daily:0}") double dailyCap,
+                        @Value("${servicetransitcalculator.farecap.weekly:0}") double weeklyCap,
+                        @Value("${servicetransitcalculator.farecap.max-cards:2000000}") int maxCards) {
+        this(dailyCap, weeklyCap, maxCards, Clock.systemUTC());
+    }
+
+    public FareCapIndex(double dailyCap, double weeklyCap, int maxCards, Clock clock) {
+        this.dailyCapCents = Math.round(dailyCap * 100);
+        this.weeklyCapCents = Math.round(weeklyCap * 100);
+        this.stripes = new Stripe[STRIPES];
+        this.clock = clock;
+
+        if (isEnabled()) {
+            int perStripe = Math.max(16, maxCards / STRIPES);
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe(perStripe);
+            }
+            long tableBytes = (long) stripes[0].keys.length * BYTES_PER_SLOT * STRIPES;
+            logger.info("Fare capping enabled: daily cap {} cents, weekly cap {} cents, up to {} cards in {} MB.",
+                    dailyCapCents, weeklyCapCents, (long) perStripe * STRIPES, tableBytes / 1_000_000);
+        }
+    }
+
+    public static FareCapIndex disabled() {
+        return new FareCapIndex(0, 0, 0);
+    }
+
+    public boolean isEnabled() {
+        return dailyCapCents > 0 || weeklyCapCents > 0;
+    }
+
+    /**
+     * Charges a fare against the card's running totals and returns the amount actually due,
+     * which is reduced once the daily or weekly cap is reached. A trip arriving late for an
+     * earlier day of the card's current week is capped and counted against the week only,
+     * since that day's total is no longer kept; one for an earlier week is charged in full.
+     */
+    public long applyCap(long panToken, LocalDate travelDate, long fareCents) {
+        if (!isEnabled() || fareCents <= 0) {
+            return fareCents;
+        }
+        long key = panToken == EMPTY ? 1L : panToken;
+
+        Stripe stripe = stripes[(int) (mix(key) >>> 58)];
+        synchronized (stripe) {
+            return stripe.charge(key, (int) travelDate.toEpochDay(), fareCents);
+        }
+    }
+
+    /**
+     * Number of cards currently tracked.
+     */
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            if (stripe != null) {
+                synchronized (stripe) {
+                    size += stripe.size;
+                }
+            }
+        }
+        return size;
+    }
+
+    // Weeks start on Monday; epoch day 0 was a Thursday
+    private static int weekOf(int epochDay) {
+        return Math.floorDiv(epochDay + 3, 7);
+    }
+
+    // Latest week that trip dates may move expiry to, so one far-future tap cannot evict every current card
+    private int latestTrustedWeek() {
+        return weekOf((int) (Math.floorDiv(clock.millis(), MILLIS_PER_DAY) + CLOCK_SKEW_DAYS));
+    }
+
+    // Finalizer from SplitMix64, spreads keys across stripes and slots
+    private static long mix(long key) {
+        key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+        key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+        return key ^ (key >>> 31);
+    }
+
+    private final class Stripe {
+        private final int maxSize;
+        private final long[] keys;
+        private final int[] days;
+        private final int[] dayCents;
+        private final int[] weekCents;
+        private int size;
+        private int latestWeek = Integer.MIN_VALUE;
+        private int sweptWeek = Integer.MIN_VALUE;
+
+        Stripe(int maxSize) {
+            // Sized exactly rather than to a power of two, so the table is never more than needed
+            int capacity = (int) Math.ceil(maxSize / MAX_LOAD_FACTOR) + 1;
+            this.maxSize = maxSize;
+            this.keys = new long[capacity];
+            this.days = new int[capacity];
+            this.dayCents = new int[capacity];
+            this.weekCents = new int[capacity];
+        }
+
+        long charge(long key, int day, long fareCents) {
+            int week = weekOf(day);
+            latestWeek = Math.max(latestWeek, Math.min(week, latestTrustedWeek()));
+
+            int slot = find(key);
+            if (keys[slot] == EMPTY) {
+                if (size >= maxSize && evictExpired() == 0) {
+                    // Table full of live cards: charge without capping rather than grow unbounded
+                    return fareCents;
+                }
+                slot = find(key);
+                keys[slot] = key;
+                days[slot] = day;
+                dayCents[slot] = 0;
+                weekCents[slot] = 0;
+                size++;
+            }
+
+            int cardWeek = weekOf(days[slot]);
+            if (week < cardWeek) {
+                // Totals for earlier weeks are no longer kept
+                return fareCents;
+            }
+            if (week > cardWeek) {
+                weekCents[slot] = 0;
+            }
+            if (day > days[slot]) {
+                days[slot] = day;
+                dayCents[slot] = 0;
+            }
+            boolean currentDay = day == days[slot];
+
+            long due = fareCents;
+            if (dailyCapCents > 0 && currentDay) {
+                due = Math.min(due, Math.max(0, dailyCapCents - dayCents[slot]));
+            }
+            if (weeklyCapCents > 0) {
+                due = Math.min(due, Math.max(0, weeklyCapCents - weekCents[slot]));
+            }
+            if (currentDay) {
+                dayCents[slot] += (int) due;
+            }
+            weekCents[slot] += (int) due;
+            return due;
+        }
+
+        // Linear probing; returns the slot holding the key or the empty slot where it belongs
+        private int find(long key) {
+            int slot = home(key);
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = next(slot);
+            }
+            return slot;
+        }
+
+        // Uses the low bits of the hash; the top bits already chose the stripe
+        private int home(long key) {
+            return (int) (((mix(key) & 0xFFFFFFFFL) * keys.length) >>> 32);
+        }
+
+        private int next(int slot) {
+            return slot + 1 == keys.length ? 0 : slot + 1;
+        }
+
+        // Drops cards whose latest week has ended, in place and without allocating
+        private int evictExpired() {
+            if (sweptWeek == latestWeek) {
+                // Nothing can have expired since the last sweep
+                return 0;
+            }
+            sweptWeek = latestWeek;
+
+            int before = size;
+            int slot = 0;
+            while (slot < keys.length) {
+                if (keys[slot] != EMPTY && weekOf(days[slot]) < latestWeek) {
+                    // A later entry may be shifted into this slot, so look at it again
+                    remove(slot);
+                } else {
+                    slot++;
+                }
+            }
+            if (size == before) {
+                logger.warn("Fare cap index stripe is full of active cards; new cards are charged without a cap.");
+            }
+            return before - size;
+        }
+
+        // Backward-shift deletion: pulls later entries of the probe run into the hole, so no tombstones are needed
+        private void remove(int hole) {
+            keys[hole] = EMPTY;
+            size--;
+            for (int slot = next(hole); keys[slot] != EMPTY; slot = next(slot)) {
+                int home = home(keys[slot]);
+                boolean reachableWithoutHole = hole <= slot
+                        ? home > hole && home <= slot
+                        : home > hole || home <= slot;
+                if (!reachableWithoutHole) {
+                    keys[hole] = keys[slot];
+                    days[hole] = days[slot];
+                    dayCents[hole] = dayCents[slot];
+                    weekCents[hole] = weekCents[slot];
+                    keys[slot] = EMPTY;
+                    hole = slot;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.servicetransitcalculator.service.impl;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+
+/**
+ * Captures per-upload ingest statistics: row counts, bytes allocated per row by the
+ * ingesting thread, and GC time spent while the upload was processed.
+ */
+class IngestStats {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestStats.class);
+
+    /**
+     * Meters shared by all uploads, registered once on the application's registry.
+     */
+    static final class Meters {
+        private final DistributionSummary allocationPerRow;
+        private final Timer gcPause;
+
+        Meters(MeterRegistry registry) {
+            this.allocationPerRow = DistributionSummary.builder("transit.ingest.allocation.per.row")
+                    .description("Bytes allocated by the ingesting thread per CSV row")
+                    .baseUnit("bytes")
+                    .register(registry);
+            this.gcPause = Timer.builder("transit.ingest.gc.pause")
+                    .description("GC time accumulated while an upload was being processed")
+                    .register(registry);
+        }
+    }
+
+    private final Meters meters;
+    private final long startNanos;
+    private final long startAllocatedBytes;
+    private final long startGcMillis;
+
+    // Written only by the ingesting thread; volatile so status requests see progress
+    private volatile long rows;
+    private volatile long rejected;
+
+    // Rows carried over from a checkpoint, excluded from the per-row allocation figure
+    private long restoredRows;
+
+    IngestStats(Meters meters) {
+        this.meters = meters;
+        this.startNanos = System.nanoTime();
+        this.startAllocatedBytes = currentThreadAllocatedBytes();
+        this.startGcMillis = totalGcMillis();
+    }
+
+    void rowRead() {
+        rows++;
+    }
+
+    void rowRejected() {
+        rejected++;
+    }
+
+    /**
+     * Restores the counters of a resumed upload.
+     */
+    void restore(long rows, long rejected) {
+        this.rows = rows;
+        this.rejected = rejected;
+        this.restoredRows = rows;
+    }
+
+    long getRows() {
+        return rows;
+    }
+
+    long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Publishes the collected statistics to the metrics registry and the log.
+     */
+    void report() {
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        long gcMillis = totalGcMillis() - startGcMillis;
+        // -1 when the JVM does not support per-thread allocation accounting
+        long bytesPerRow = -1;
+        long rowsThisRun = rows - restoredRows;
+        if (rowsThisRun > 0 && startAllocatedBytes >= 0) {
+            bytesPerRow = (currentThreadAllocatedBytes() - startAllocatedBytes) / rowsThisRun;
+            meters.allocationPerRow.record(bytesPerRow);
+        }
+        meters.gcPause.record(Duration.ofMillis(gcMillis));
+
+        logger.info("Ingested {} rows ({} rejected) in {} ms; allocated ~{} bytes/row; GC time {} ms.",
+                rows, rejected, elapsedMillis, bytesPerRow, gcMillis);
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean sunThreadMXBean
+                && sunThreadMXBean.isThreadAllocatedMemorySupported()
+                && sunThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+            return sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long totalGcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long time = gc.getCollectionTime();
+            if (time > 0) {
+                total += time;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,44 @@
+package com.servicetransitcalculator.service.impl;
+
+import com.servicetransitcalculator.model.RejectReason;
+import com.servicetransitcalculator.model.Tap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress of an interrupted upload as restored from disk: the number of data rows
+ * already consumed from the spooled input, the reject counters at that point and the
+ * taps parsed so far that are still waiting to be paired.
+ */
+class JobCheckpoint {
+
+    private final long rowsRead;
+    private final long[] rejectedByReason;
+    private final List<Tap> taps;
+
+    JobCheckpoint(long rowsRead, long[] rejectedByReason, List<Tap> taps) {
+        this.rowsRead = rowsRead;
+        this.rejectedByReason = rejectedByReason;
+        this.taps = taps;
+    }
+
+    /**
+     * A checkpoint before the first row, for uploads restarted from the beginning of their input.
+     */
+    static JobCheckpoint fromStart() {
+        return new JobCheckpoint(0, new long[RejectReason.values().length], new ArrayList<>());
+    }
+
+    long getRowsRead() {
+        return rowsRead;
+    }
+
+    long[] getRejectedByReason() {
+        return rejectedByReason;
+    }
+
+    List<Tap> getTaps() {
+        return taps;
+    }
+}
@@ -0,0 +1,50 @@
+package com.servicetransitcalculator.service.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Admits at most a fixed number of log lines per wall-clock second and counts the rest,
+ * so a flood of bad rows cannot turn into a flood of log I/O. The suppressed count is
+ * handed back by {@link #takeSuppressed()} for a single summary line.
+ */
+class LogRateLimiter {
+
+    private final int limitPerSecond;
+    private final LongSupplier clockMillis;
+    private final AtomicLong second = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    LogRateLimiter(int limitPerSecond) {
+        this(limitPerSecond, System::currentTimeMillis);
+    }
+
+    LogRateLimiter(int limitPerSecond, LongSupplier clockMillis) {
+        this.limitPerSecond = limitPerSecond;
+        this.clockMillis = clockMillis;
+    }
+
+    /**
+     * Returns whether the caller may log now; otherwise the line is counted as suppressed.
+     */
+    boolean tryAcquire() {
+        long now = clockMillis.getAsLong() / 1000;
+        if (second.getAndSet(now) != now) {
+            count.set(0);
+        }
+        if (count.incrementAndGet() <= limitPerSecond) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns the number of lines suppressed since the last call and resets it.
+     */
+    long takeSuppressed() {
+        return suppressed.getAndSet(0);
+    }
+}
@@ -0,0 +1,73 @@
+package com.servicetransitcalculator.service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Declarative tap pairing rules, bound from {@code servicetransitcalculator.rules.*}.
+ * The defaults reproduce the original pairing behaviour; {@link PairingStateMachine}
+ * compiles them into its transition table at startup.
+ */
+@Component
+public class PairingRules {
+
+    /** How an OFF tap at the boarding stop is treated. */
+    public enum SameStopRule {
+        /** The ON tap becomes an incomplete trip and the OFF tap is handled as a stray OFF. */
+        INCOMPLETE,
+        /** The trip is recorded as cancelled and not charged. */
+        CANCELLED
+    }
+
+    /** How an OFF tap without a preceding ON tap is treated. */
+    public enum StrayOffRule {
+        /** Charged as an incomplete trip starting at the OFF stop. */
+        INCOMPLETE,
+        /** Dropped without producing a trip. */
+        IGNORE
+    }
+
+    private final SameStopRule sameStopRule;
+    private final StrayOffRule strayOffRule;
+    private final long maxTripDurationSecs;
+    private final long transferWindowSecs;
+    private final double transferFare;
+
+    public PairingRules(@Value("${servicetransitcalculator.rules.same-stop-off:INCOMPLETE}") SameStopRule sameStopRule,
+                        @Value("${servicetransitcalculator.rules.stray-off:INCOMPLETE}") StrayOffRule strayOffRule,
+                        @Value("${servicetransitcalculator.rules.max-trip-duration-minutes:0}") long maxTripDurationMinutes,
+                        @Value("${servicetransitcalculator.rules.transfer-window-minutes:0}") long transferWindowMinutes,
+                        @Value("${servicetransitcalculator.rules.transfer-fare:0.0}") double transferFare) {
+        this.sameStopRule = sameStopRule;
+        this.strayOffRule = strayOffRule;
+        this.maxTripDurationSecs = maxTripDurationMinutes * 60;
+        this.transferWindowSecs = transferWindowMinutes * 60;
+        this.transferFare = transferFare;
+    }
+
+    public static PairingRules defaults() {
+        return new PairingRules(SameStopRule.INCOMPLETE, StrayOffRule.INCOMPLETE, 0, 0, 0.0);
+    }
+
+    public SameStopRule getSameStopRule() {
+        return sameStopRule;
+    }
+
+    public StrayOffRule getStrayOffRule() {
+        return strayOffRule;
+    }
+
+    /** Maximum ON to OFF duration in seconds; 0 disables the limit. */
+    public long getMaxTripDurationSecs() {
+        return maxTripDurationSecs;
+    }
+
+    /** Window after a completed trip in which the next completed trip is a transfer; 0 disables transfers. */
+    public long getTransferWindowSecs() {
+        return transferWindowSecs;
+    }
+
+    public double getTransferFare() {
+        return transferFare;
+    }
+}
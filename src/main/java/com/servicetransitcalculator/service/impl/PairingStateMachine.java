@@ -0,0 +1,128 @@
+package com.servicetransitcalculator.service.impl;
+
+import com.servicetransitcalculator.model.Tap;
+
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Per-PAN tap pairing compiled from {@link PairingRules} into a transition table.
+ * {@link #run} makes a single pass over time-sorted taps; each tap is classified into an
+ * event, and the table entry for the current state and event gives the trips to emit and
+ * the next state. Apart from the trips themselves, the loop allocates nothing per tap.
+ */
+public class PairingStateMachine {
+
+    /** Outcome of a trip; the name doubles as the trip status. */
+    public enum Outcome { COMPLETED, INCOMPLETE, CANCELLED, TRANSFER }
+
+    /** Receives trips as they are emitted. */
+    @FunctionalInterface
+    public interface TripSink {
+        void emit(Tap tapOn, Tap tapOff, Outcome outcome);
+    }
+
+    // States
+    private static final int IDLE = 0;
+    private static final int OPEN = 1;
+
+    // Events
+    private static final int EV_ON = 0;
+    private static final int EV_OFF_OTHER_STOP = 1;
+    private static final int EV_OFF_SAME_STOP = 2;
+    private static final int EV_OFF_EXPIRED = 3;
+
+    // Action bits; a table entry may combine several
+    private static final int EMIT_OPEN_INCOMPLETE = 1;  // pending ON becomes an incomplete trip
+    private static final int EMIT_COMPLETED = 1 << 1;   // pending ON and current OFF form a trip
+    private static final int EMIT_CANCELLED = 1 << 2;   // pending ON and current OFF form a cancelled trip
+    private static final int EMIT_STRAY = 1 << 3;       // current OFF becomes an incomplete trip
+    private static final int OPEN_CURRENT = 1 << 4;     // current ON becomes pending; otherwise next state is IDLE
+
+    private final int[][] table = new int[2][4];
+    private final long maxTripDurationSecs;
+    private final long transferWindowSecs;
+
+    public PairingStateMachine(PairingRules rules) {
+        this.maxTripDurationSecs = rules.getMaxTripDurationSecs();
+        this.transferWindowSecs = rules.getTransferWindowSecs();
+
+        int stray = rules.getStrayOffRule() == PairingRules.StrayOffRule.INCOMPLETE ? EMIT_STRAY : 0;
+
+        table[IDLE][EV_ON] = OPEN_CURRENT;
+        table[IDLE][EV_OFF_OTHER_STOP] = stray;
+        table[IDLE][EV_OFF_SAME_STOP] = stray;
+        table[IDLE][EV_OFF_EXPIRED] = stray;
+
+        table[OPEN][EV_ON] = EMIT_OPEN_INCOMPLETE | OPEN_CURRENT;
+        table[OPEN][EV_OFF_OTHER_STOP] = EMIT_COMPLETED;
+        table[OPEN][EV_OFF_SAME_STOP] = rules.getSameStopRule() == PairingRules.SameStopRule.CANCELLED
+                ? EMIT_CANCELLED
+                : EMIT_OPEN_INCOMPLETE | stray;
+        table[OPEN][EV_OFF_EXPIRED] = EMIT_OPEN_INCOMPLETE | stray;
+    }
+
+    /**
+     * Pairs the taps of a single PAN, which must already be sorted by time.
+     */
+    public void run(List<Tap> taps, TripSink sink) {
+        int state = IDLE;
+        Tap open = null;
+        Tap lastCompletedOff = null;
+        boolean lastWasTransfer = false;
+
+        for (int i = 0; i < taps.size(); i++) {
+            Tap tap = taps.get(i);
+            int action = table[state][classify(state, open, tap)];
+
+            if ((action & EMIT_OPEN_INCOMPLETE) != 0) {
+                sink.emit(open, null, Outcome.INCOMPLETE);
+            }
+            if ((action & EMIT_COMPLETED) != 0) {
+                // A single transfer is allowed within the window after a completed trip
+                boolean transfer = !lastWasTransfer && isWithinTransferWindow(lastCompletedOff, open);
+                sink.emit(open, tap, transfer ? Outcome.TRANSFER : Outcome.COMPLETED);
+                lastCompletedOff = tap;
+                lastWasTransfer = transfer;
+            }
+            if ((action & EMIT_CANCELLED) != 0) {
+                sink.emit(open, tap, Outcome.CANCELLED);
+            }
+            if ((action & EMIT_STRAY) != 0) {
+                sink.emit(tap, null, Outcome.INCOMPLETE);
+            }
+
+            if ((action & OPEN_CURRENT) != 0) {
+                open = tap;
+                state = OPEN;
+            } else {
+                open = null;
+                state = IDLE;
+            }
+        }
+
+        if (state == OPEN) {
+            sink.emit(open, null, Outcome.INCOMPLETE);
+        }
+    }
+
+    private int classify(int state, Tap open, Tap tap) {
+        if (tap.getTapType() == Tap.TapType.ON) {
+            return EV_ON;
+        }
+        if (state == IDLE) {
+            return EV_OFF_OTHER_STOP;
+        }
+        if (maxTripDurationSecs > 0
+                && ChronoUnit.SECONDS.between(open.getDateTimeUtc(), tap.getDateTimeUtc()) > maxTripDurationSecs) {
+            return EV_OFF_EXPIRED;
+        }
+        return open.getStopId().equals(tap.getStopId()) ? EV_OFF_SAME_STOP : EV_OFF_OTHER_STOP;
+    }
+
+    private boolean isWithinTransferWindow(Tap previousOff, Tap tapOn) {
+        return transferWindowSecs > 0
+                && previousOff != null
+                && ChronoUnit.SECONDS.between(previousOff.getDateTimeUtc(), tapOn.getDateTimeUtc()) <= transferWindowSecs;
+    }
+}
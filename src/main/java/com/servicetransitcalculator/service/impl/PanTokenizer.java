@@ -0,0 +1,236 @@
+package com.servicetransitcalculator.service.impl;
+
+import com.servicetransitcalculator.model.PanToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns card numbers into fixed 64-bit tokens at ingest using SipHash-2-4, a keyed hash
+ * that is fast on short inputs. Without the key, tokens cannot be traced back to PANs by
+ * hashing candidate card numbers. Only digit strings are accepted, so values mangled by
+ * spreadsheets (e.g. {@code 1.23457E+15}) are rejected rather than merged.
+ * <p>
+ * Tokens must stay stable across restarts, since checkpoints and fare cap totals are keyed
+ * by them. Without a configured key, a random key is generated once and kept in a key file
+ * readable only by the process user, and an existing key file that anyone else could have
+ * written is refused; in partitioned mode a configured key is required.
+ */
+@Component
+public class PanTokenizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PanTokenizer.class);
+
+    // Longest PAN allowed by ISO/IEC 7812
+    public static final int MAX_PAN_LENGTH = 19;
+
+    private static final int KEY_BYTES = 16;
+
+    private static final Set<PosixFilePermission> OWNER_READ_WRITE =
+            Set.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+
+    private final long k0;
+    private final long k1;
+
+    /**
+     * Creates a tokenizer for the given key, or for a random key held only in memory if it
+     * is blank.
+     */
+    public PanTokenizer(String key) {
+        this(key == null || key.isBlank() ? randomKey() : sha256(key));
+    }
+
+    @Autowired
+    public PanTokenizer(@Value("${servicetransitcalculator.pan.token-key:}") String key,
+                        @Value("${servicetransitcalculator.pan.token-key-file:${user.home}/.service-transit-calculator/pan-token.key}") String keyFile,
+                        @Value("${servicetransitcalculator.cluster.nodes:}") List<String> clusterNodes) {
+        this(resolveKey(key, Path.of(keyFile), !clusterNodes.isEmpty()));
+    }
+
+    private PanTokenizer(byte[] keyBytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(keyBytes).order(ByteOrder.LITTLE_ENDIAN);
+        this.k0 = buffer.getLong();
+        this.k1 = buffer.getLong();
+    }
+
+    public static PanTokenizer withRandomKey() {
+        return new PanTokenizer("");
+    }
+
+    /**
+     * Tokenizes a PAN of 1 to 19 digits.
+     *
+     * @throws IllegalArgumentException if the PAN is not a plain digit string
+     */
+    public PanToken tokenize(String pan) {
+        // The message deliberately leaves out the value, which may be a real card number
+        if (pan == null || pan.isEmpty() || pan.length() > MAX_PAN_LENGTH) {
+            throw new IllegalArgumentException("PAN must be 1 to " + MAX_PAN_LENGTH + " digits.");
+        }
+        int lastDigits = 0;
+        for (int i = 0; i < pan.length(); i++) {
+            char c = pan.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("PAN must contain only digits.");
+            }
+            lastDigits = (lastDigits * 10 + (c - '0')) % 10_000;
+        }
+        return new PanToken(sipHash(pan), lastDigits, pan.length());
+    }
+
+    // SipHash-2-4 over the ASCII digits of the PAN
+    private long sipHash(String pan) {
+        long[] v = {
+                k0 ^ 0x736f6d6570736575L,
+                k1 ^ 0x646f72616e646f6dL,
+                k0 ^ 0x6c7967656e657261L,
+                k1 ^ 0x7465646279746573L
+        };
+
+        int length = pan.length();
+        int fullWords = length & ~7;
+        for (int offset = 0; offset < fullWords; offset += 8) {
+            compress(v, word(pan, offset, 8));
+        }
+        // Final word holds the remaining bytes with the message length in the top byte
+        compress(v, word(pan, fullWords, length - fullWords) | ((long) length << 56));
+
+        v[2] ^= 0xff;
+        sipRounds(v, 4);
+        return v[0] ^ v[1] ^ v[2] ^ v[3];
+    }
+
+    private static void compress(long[] v, long m) {
+        v[3] ^= m;
+        sipRounds(v, 2);
+        v[0] ^= m;
+    }
+
+    private static void sipRounds(long[] v, int rounds) {
+        long v0 = v[0], v1 = v[1], v2 = v[2], v3 = v[3];
+        for (int round = 0; round < rounds; round++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v[0] = v0; v[1] = v1; v[2] = v2; v[3] = v3;
+    }
+
+    // Reads up to 8 ASCII characters as a little-endian word
+    private static long word(String pan, int offset, int count) {
+        long word = 0;
+        for (int i = 0; i < count; i++) {
+            word |= (long) (pan.charAt(offset + i) & 0xff) << (8 * i);
+        }
+        return word;
+    }
+
+    private static byte[] resolveKey(String key, Path keyFile, boolean partitioned) {
+        if (key != null && !key.isBlank()) {
+            return sha256(key);
+        }
+        if (partitioned) {
+            // Another coordinator, or this one after a restart, must route each card to the same node
+            throw new IllegalStateException("servicetransitcalculator.pan.token-key must be set in partitioned mode.");
+        }
+        try {
+            if (Files.exists(keyFile, LinkOption.NOFOLLOW_LINKS)) {
+                checkPrivate(keyFile);
+                byte[] keyBytes = HexFormat.of().parseHex(Files.readString(keyFile, StandardCharsets.US_ASCII).trim());
+                if (keyBytes.length != KEY_BYTES) {
+                    throw new IllegalArgumentException("Expected a " + KEY_BYTES + "-byte key.");
+                }
+                return keyBytes;
+            }
+            byte[] keyBytes = randomKey();
+            writeKeyFile(keyFile, keyBytes);
+            logger.warn("No PAN token key configured; generated one in {}. Set servicetransitcalculator.pan.token-key "
+                    + "to keep tokens stable if that file is lost.", keyFile);
+            return keyBytes;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Unable to load or create PAN token key file " + keyFile, e);
+        }
+    }
+
+    // A key file planted by another user would let them trace tokens back to PANs, so on POSIX
+    // systems only a regular file owned by the process user with mode 0600 is trusted
+    private static void checkPrivate(Path keyFile) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(keyFile, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (view == null) {
+            logger.debug("Cannot check the owner of {} on this file system.", keyFile);
+            return;
+        }
+        PosixFileAttributes attributes = view.readAttributes();
+        UserPrincipal processUser = keyFile.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!attributes.isRegularFile()) {
+            throw new IllegalArgumentException("Key file must be a regular file.");
+        }
+        if (!attributes.owner().equals(processUser)) {
+            throw new IllegalArgumentException("Key file is owned by " + attributes.owner().getName()
+                    + ", not by " + processUser.getName() + ".");
+        }
+        if (!attributes.permissions().equals(OWNER_READ_WRITE)) {
+            throw new IllegalArgumentException("Key file must have mode 0600, not "
+                    + PosixFilePermissions.toString(attributes.permissions()) + ".");
+        }
+    }
+
+    // Written to a temporary file, which is owner-only on POSIX systems, and moved into place
+    // so a crash never leaves a truncated key
+    private static void writeKeyFile(Path keyFile, byte[] keyBytes) throws IOException {
+        Path dir = keyFile.toAbsolutePath().getParent();
+        if (!Files.isDirectory(dir)) {
+            Files.createDirectories(dir);
+            try {
+                Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwx------"));
+            } catch (UnsupportedOperationException e) {
+                logger.debug("Cannot restrict permissions of {} on this file system.", dir);
+            }
+        }
+        Path tmp = Files.createTempFile(dir, keyFile.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(tmp, HexFormat.of().formatHex(keyBytes), StandardCharsets.US_ASCII);
+            Files.move(tmp, keyFile, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static byte[] randomKey() {
+        byte[] keyBytes = new byte[KEY_BYTES];
+        new SecureRandom().nextBytes(keyBytes);
+        return keyBytes;
+    }
+
+    private static byte[] sha256(String key) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+}
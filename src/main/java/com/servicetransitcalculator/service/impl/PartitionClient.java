@@ -0,0 +1,346 @@
+package com.servicetransitcalculator.service.impl;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+import com.servicetransitcalculator.model.PanToken;
+import com.servicetransitcalculator.model.RejectReason;
+import com.servicetransitcalculator.model.Trip;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Routes upload rows to worker nodes by PAN token and collects their priced trips. Nodes
+ * receive tokens and masked PANs only, never raw card numbers.
+ * With no nodes configured the service runs in single-node mode and this client is disabled.
+ * <p>
+ * The coordinator only checks what routing needs, the field count and the PAN, and forwards
+ * the remaining fields as they were uploaded. Each node parses dates and tap types, pairs and
+ * prices its own cards and replies with the rows it rejected, which the coordinator merges
+ * into the upload's status and report. The size of each payload is published as
+ * {@code transit.partition.payload}.
+ * <p>
+ * Every request names its batch, derived from the upload's content, and partition. Nodes
+ * ignore a partition of a batch they have already accepted, so resending an upload after a
+ * partial failure, or resuming it after a restart, does not price any card twice.
+ */
+@Component
+public class PartitionClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionClient.class);
+
+    public static final MediaType TEXT_CSV = MediaType.valueOf("text/csv");
+
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_READ_TIMEOUT = Duration.ofMinutes(5);
+
+    // Fields of a partition row: the upload row number, the six non-PAN upload fields, the token and masked PAN
+    private static final int PARTITION_ROW_LENGTH = 9;
+
+    private final List<String> nodes;
+    private final String token;
+    private final RestClient restClient;
+    private final DistributionSummary payloadSize;
+
+    // One thread per node, so requests never queue behind unrelated work on the common pool
+    private final ExecutorService executor;
+
+    public PartitionClient(List<String> nodes, String token) {
+        this(nodes, token, DEFAULT_CONNECT_TIMEOUT.toMillis(), DEFAULT_READ_TIMEOUT.toMillis(), new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public PartitionClient(@Value("${servicetransitcalculator.cluster.nodes:}") List<String> nodes,
+                           @Value("${servicetransitcalculator.cluster.token:}") String token,
+                           @Value("${servicetransitcalculator.cluster.connect-timeout-ms:5000}") long connectTimeoutMs,
+                           @Value("${servicetransitcalculator.cluster.read-timeout-ms:300000}") long readTimeoutMs,
+                           MeterRegistry meterRegistry) {
+        this.nodes = List.copyOf(nodes);
+        this.token = token;
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(Duration.ofMillis(connectTimeoutMs));
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        this.restClient = RestClient.builder().requestFactory(requestFactory).build();
+
+        this.payloadSize = DistributionSummary.builder("transit.partition.payload")
+                .description("Size of the row payload sent to one node")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        this.executor = isEnabled() ? Executors.newFixedThreadPool(this.nodes.size(), runnable -> {
+            Thread thread = new Thread(runnable, "partition-client");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+
+        if (isEnabled()) {
+            logger.info("Partitioned mode enabled with {} nodes: {}", this.nodes.size(), this.nodes);
+        }
+    }
+
+    public static PartitionClient standalone() {
+        return new PartitionClient(List.of(), "");
+    }
+
+    public boolean isEnabled() {
+        return !nodes.isEmpty();
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the partition owning the given PAN token. All taps for a card land on the same
+     * node so each node can pair them independently.
+     */
+    public int partitionOf(long panToken) {
+        // Tokens come from a keyed hash, so their bits are already evenly spread
+        return (int) Math.floorMod(panToken, (long) nodes.size());
+    }
+
+    /**
+     * Names the batch for an upload with the given content digest. The node count is part of
+     * the name because partition numbers only identify the same cards for the same node list.
+     */
+    String batchId(byte[] contentDigest) {
+        return HexFormat.of().formatHex(contentDigest) + "-" + nodes.size();
+    }
+
+    Batch newBatch() {
+        return new Batch(nodes.size());
+    }
+
+    /**
+     * Sends each partition of the batch to its node in parallel and returns the rows the
+     * nodes rejected, in upload order, as {@code [rowNumber, reason, detail, fields...]}.
+     * A node that has already accepted a partition of this batch answers with no rejects.
+     */
+    List<String[]> dispatch(String batchId, Batch batch) {
+        List<CompletableFuture<List<String[]>>> requests = new ArrayList<>(nodes.size());
+        long payloadBytes = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            byte[] body = batch.body(i);
+            if (body.length == 0) {
+                continue;
+            }
+            int partition = i;
+            String node = nodes.get(i);
+            payloadSize.record(body.length);
+            payloadBytes += body.length;
+            requests.add(CompletableFuture.supplyAsync(() -> sendRows(node, batchId, partition, body), executor));
+        }
+        CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).join();
+
+        List<String[]> rejected = new ArrayList<>();
+        for (CompletableFuture<List<String[]>> request : requests) {
+            rejected.addAll(request.join());
+        }
+        rejected.sort(Comparator.comparingLong(row -> Long.parseLong(row[0])));
+        logger.info("Dispatched {} rows ({} bytes) of batch {} to {} nodes; {} rejected by the nodes.",
+                batch.getRows(), payloadBytes, batchId, requests.size(), rejected.size());
+        return rejected;
+    }
+
+    /**
+     * Fetches and merges the priced trips held by every node.
+     */
+    public List<Trip> fetchTrips() {
+        List<CompletableFuture<List<Trip>>> requests = new ArrayList<>(nodes.size());
+        for (String node : nodes) {
+            requests.add(CompletableFuture.supplyAsync(() -> restClient.get()
+                    .uri(node + "/transit/partition/trips")
+                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                    .retrieve()
+                    .body(new ParameterizedTypeReference<List<Trip>>() {}), executor));
+        }
+
+        List<Trip> merged = new ArrayList<>();
+        for (CompletableFuture<List<Trip>> request : requests) {
+            List<Trip> nodeTrips = request.join();
+            if (nodeTrips != null) {
+                merged.addAll(nodeTrips);
+            }
+        }
+        return merged;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<String[]> sendRows(String node, String batchId, int partition, byte[] body) {
+        logger.debug("Sending {} bytes of partition {} to node {}", body.length, partition, node);
+        byte[] rejected = restClient.post()
+                .uri(node + "/transit/partition/taps?batch={batch}&partition={partition}", batchId, partition)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                .contentType(TEXT_CSV)
+                .body(body)
+                .retrieve()
+                .body(byte[].class);
+        return rejected == null ? List.of() : readRows(rejected);
+    }
+
+    /**
+     * Rows of one upload split by partition, encoded as the nodes read them back with
+     * {@link PartitionRow#parse}. Written only by the ingesting thread.
+     */
+    final class Batch {
+
+        private final ByteArrayOutputStream[] buffers;
+        private final CSVWriter[] writers;
+        private long rows;
+
+        private Batch(int partitions) {
+            buffers = new ByteArrayOutputStream[partitions];
+            writers = new CSVWriter[partitions];
+            for (int i = 0; i < partitions; i++) {
+                buffers[i] = new ByteArrayOutputStream();
+                writers[i] = new CSVWriter(new OutputStreamWriter(buffers[i], StandardCharsets.UTF_8));
+            }
+        }
+
+        /**
+         * Adds an upload row whose PAN has already been tokenized. The raw PAN is replaced by
+         * the token and masked PAN before the row is buffered.
+         */
+        void add(long rowNumber, String[] record, PanToken pan) {
+            writers[partitionOf(pan.getValue())].writeNext(new String[]{
+                    String.valueOf(rowNumber),
+                    record[0],
+                    record[1],
+                    record[2],
+                    record[3],
+                    record[4],
+                    record[5],
+                    String.valueOf(pan.getValue()),
+                    pan.masked()
+            });
+            rows++;
+        }
+
+        long getRows() {
+            return rows;
+        }
+
+        private byte[] body(int partition) {
+            try {
+                writers[partition].flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to encode partition " + partition + ".", e);
+            }
+            return buffers[partition].toByteArray();
+        }
+    }
+
+    /**
+     * One row as a node receives it: the upload row number, the upload fields with the PAN
+     * column holding the masked PAN, and the PAN token.
+     */
+    static final class PartitionRow {
+
+        private final long rowNumber;
+        private final String[] record;
+        private final PanToken pan;
+
+        private PartitionRow(long rowNumber, String[] record, PanToken pan) {
+            this.rowNumber = rowNumber;
+            this.record = record;
+            this.pan = pan;
+        }
+
+        /**
+         * Parses a row written by {@link Batch#add}. Only the routing fields are checked here;
+         * the node validates the rest and rejects the row like any uploaded one. A row that is
+         * not in this format at all is an error, as the coordinator produced it.
+         */
+        static PartitionRow parse(String[] row) {
+            if (row.length != PARTITION_ROW_LENGTH) {
+                throw new IllegalArgumentException("Invalid partition row length: " + row.length);
+            }
+            String[] record = Arrays.copyOfRange(row, 1, 8);
+            record[6] = row[8];
+            return new PartitionRow(Long.parseLong(row[0]), record, PanToken.fromMasked(Long.parseLong(row[7]), row[8]));
+        }
+
+        long getRowNumber() {
+            return rowNumber;
+        }
+
+        String[] getRecord() {
+            return record;
+        }
+
+        PanToken getPan() {
+            return pan;
+        }
+    }
+
+    /**
+     * Encodes a rejected row for the reply to the coordinator.
+     */
+    static String[] rejectedRow(long rowNumber, RejectReason reason, String detail, String[] record) {
+        String[] row = new String[record.length + 3];
+        row[0] = String.valueOf(rowNumber);
+        row[1] = reason.name();
+        row[2] = detail;
+        System.arraycopy(record, 0, row, 3, record.length);
+        return row;
+    }
+
+    static byte[] toCsv(List<String[]> rows) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            csvWriter.writeAll(rows);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode rows for the coordinator.", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static List<String[]> readRows(byte[] csv) {
+        List<String[]> rows = new ArrayList<>();
+        try (CSVReader csvReader = new CSVReader(new InputStreamReader(new ByteArrayInputStream(csv), StandardCharsets.UTF_8))) {
+            String[] row;
+            while ((row = csvReader.readNext()) != null) {
+                rows.add(row);
+            }
+        } catch (IOException | CsvValidationException e) {
+            throw new IllegalStateException("Unreadable reply from partition node.", e);
+        }
+        return rows;
+    }
+}
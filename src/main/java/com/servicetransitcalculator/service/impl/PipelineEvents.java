@@ -0,0 +1,128 @@
+package com.servicetransitcalculator.service.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events for each stage of the upload and download pipeline. When no
+ * recording has them enabled, {@code begin}/{@code commit} compile down to almost nothing,
+ * so they stay in the hot path permanently. Fields are only filled in once
+ * {@code shouldCommit()} says the event will actually be written.
+ */
+final class PipelineEvents {
+
+    static final String CATEGORY = "Transit Calculator";
+
+    private PipelineEvents() {
+    }
+
+    @Name("com.servicetransitcalculator.Upload")
+    @Label("CSV Upload")
+    @Description("Parsing, pairing and pricing of one uploaded CSV")
+    @Category({CATEGORY, "Pipeline"})
+    @StackTrace(false)
+    static final class UploadEvent extends Event {
+        @Label("Upload ID")
+        String uploadId;
+
+        @Label("Input Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Rejected Rows")
+        long rejected;
+
+        @Label("Resumed")
+        boolean resumed;
+    }
+
+    @Name("com.servicetransitcalculator.ParseBatch")
+    @Label("Parse Batch")
+    @Description("Parsing of a batch of consecutive CSV rows into taps")
+    @Category({CATEGORY, "Pipeline"})
+    @StackTrace(false)
+    static final class ParseBatchEvent extends Event {
+        @Label("Upload ID")
+        String uploadId;
+
+        @Label("First Row")
+        long firstRow;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Rejected Rows")
+        long rejected;
+
+        @Label("Field Characters")
+        @Description("Characters in the parsed fields, excluding delimiters and quotes")
+        @DataAmount
+        long chars;
+
+        // Counters at the start of the batch, not recorded
+        transient long rejectedBefore;
+    }
+
+    @Name("com.servicetransitcalculator.PairCard")
+    @Label("Pair Card Taps")
+    @Description("Pairing and pricing of the taps of one card")
+    @Category({CATEGORY, "Pipeline"})
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class PairCardEvent extends Event {
+        @Label("Taps")
+        int taps;
+    }
+
+    // Off by default: one event per trip is only worth it when chasing a specific fare problem
+    @Name("com.servicetransitcalculator.FareLookup")
+    @Label("Fare Lookup")
+    @Description("Fare lookup and capping for a single trip")
+    @Category({CATEGORY, "Pipeline"})
+    @StackTrace(false)
+    @Enabled(false)
+    static final class FareLookupEvent extends Event {
+        @Label("Outcome")
+        String outcome;
+
+        @Label("Fare Key")
+        String fareKey;
+
+        @Label("Fare Cents")
+        long fareCents;
+
+        @Label("Due Cents")
+        long dueCents;
+    }
+
+    @Name("com.servicetransitcalculator.Download")
+    @Label("Download Artifact")
+    @Description("Preparation of the processed trips CSV for download")
+    @Category({CATEGORY, "Pipeline"})
+    @StackTrace(false)
+    static final class DownloadEvent extends Event {
+        @Label("Result Version")
+        long version;
+
+        @Label("Trips")
+        long trips;
+
+        @Label("CSV Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Rebuilt")
+        @Description("Whether the CSV was written rather than served from the download cache")
+        boolean rebuilt;
+    }
+}
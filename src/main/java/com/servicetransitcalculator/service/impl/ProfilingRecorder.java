@@ -0,0 +1,128 @@
+package com.servicetransitcalculator.service.impl;
+
+import com.servicetransitcalculator.exception.RecordingStateException;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.text.ParseException;
+import java.time.Duration;
+
+/**
+ * Runs at most one on-demand flight recording with the JDK's default profile plus the
+ * pipeline events. Recordings are bounded in size, age and duration, so one left running
+ * cannot fill the disk. The last recording can be downloaded until the next one starts.
+ */
+@Component
+public class ProfilingRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProfilingRecorder.class);
+
+    private final File dir;
+    private final long maxSizeBytes;
+    private final Duration maxAge;
+    private final Duration maxDuration;
+    private Recording recording;
+    private File lastDump;
+
+    public ProfilingRecorder(@Value("${servicetransitcalculator.profiling.dir:${java.io.tmpdir}/transit-profiling}") String dir,
+                             @Value("${servicetransitcalculator.profiling.max-size-mb:100}") long maxSizeMb,
+                             @Value("${servicetransitcalculator.profiling.max-age-minutes:30}") long maxAgeMinutes,
+                             @Value("${servicetransitcalculator.profiling.max-duration-minutes:60}") long maxDurationMinutes) {
+        this.dir = new File(dir);
+        this.maxSizeBytes = maxSizeMb * 1024 * 1024;
+        this.maxAge = Duration.ofMinutes(maxAgeMinutes);
+        this.maxDuration = Duration.ofMinutes(maxDurationMinutes);
+    }
+
+    /**
+     * Starts a new recording, discarding the previous one.
+     *
+     * @param fareLookups whether to also record one event per priced trip
+     */
+    public synchronized void start(boolean fareLookups) {
+        if (isRunning()) {
+            throw new RecordingStateException("A recording is already running.");
+        }
+        close();
+
+        Recording newRecording;
+        try {
+            newRecording = new Recording(Configuration.getConfiguration("default"));
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("Unable to load the default recording configuration.", e);
+        }
+        newRecording.setName("transit-calculator");
+        newRecording.setToDisk(true);
+        newRecording.setMaxSize(maxSizeBytes);
+        newRecording.setMaxAge(maxAge);
+        newRecording.setDuration(maxDuration);
+        newRecording.enable(PipelineEvents.UploadEvent.class);
+        newRecording.enable(PipelineEvents.ParseBatchEvent.class);
+        newRecording.enable(PipelineEvents.PairCardEvent.class).withThreshold(Duration.ofMillis(1));
+        newRecording.enable(PipelineEvents.DownloadEvent.class);
+        if (fareLookups) {
+            newRecording.enable(PipelineEvents.FareLookupEvent.class);
+        }
+        newRecording.start();
+        recording = newRecording;
+        logger.info("Flight recording started (max {} bytes, max age {}, stops after {}, fare lookups {}).",
+                maxSizeBytes, maxAge, maxDuration, fareLookups);
+    }
+
+    /**
+     * Stops the running recording. Its data stays available for {@link #dump()}.
+     */
+    public synchronized void stop() {
+        if (!isRunning()) {
+            throw new RecordingStateException("No recording is running.");
+        }
+        recording.stop();
+        logger.info("Flight recording stopped.");
+    }
+
+    public synchronized boolean isRunning() {
+        return recording != null && recording.getState() == RecordingState.RUNNING;
+    }
+
+    /**
+     * Writes the current or last recording to a file and returns it. A running recording
+     * keeps running; the file holds a snapshot of what it has recorded so far.
+     */
+    public synchronized File dump() {
+        if (recording == null || recording.getState() == RecordingState.NEW) {
+            throw new RecordingStateException("No recording is available.");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Unable to create profiling directory " + dir);
+        }
+        // A fresh name per dump, so a download still in progress is never overwritten
+        File file = new File(dir, "transit-calculator-" + System.currentTimeMillis() + ".jfr");
+        try {
+            recording.dump(file.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write flight recording.", e);
+        }
+        if (lastDump != null) {
+            lastDump.delete();
+        }
+        lastDump = file;
+        return file;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+}
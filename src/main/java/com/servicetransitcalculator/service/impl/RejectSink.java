@@ -0,0 +1,13 @@
+package com.servicetransitcalculator.service.impl;
+
+import com.servicetransitcalculator.model.RejectReason;
+
+/**
+ * Receives rows rejected while parsing: the upload job on a single node or coordinator,
+ * or the reply to the coordinator on a partition node.
+ */
+@FunctionalInterface
+interface RejectSink {
+
+    void reject(long rowNumber, RejectReason reason, String detail, String[] record);
+}
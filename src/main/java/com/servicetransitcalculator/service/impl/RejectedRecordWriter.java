@@ -0,0 +1,203 @@
+package com.servicetransitcalculator.service.impl;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+import com.servicetransitcalculator.model.RejectReason;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes rejected CSV rows for one upload to a side file in the background.
+ * Callers hand rows off through a bounded queue and never wait on disk I/O; rows that
+ * do not fit in the queue or exceed the per-upload limit are counted as dropped.
+ * A drain task is scheduled only while rows are queued, so idle uploads hold no thread
+ * and many writers can share a small pool.
+ */
+class RejectedRecordWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RejectedRecordWriter.class);
+
+    private static final String[] HEADER = {"RowNumber", "Reason", "Detail", "Record"};
+
+    /** Passed as {@code resumedThroughRow} for an upload that starts a fresh report. */
+    static final long NEW_REPORT = -1;
+
+    private final File file;
+    private final long resumedThroughRow;
+    private final long maxRecords;
+    private final Executor executor;
+    private final BlockingQueue<String[]> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean closed;
+
+    // Touched only by the drain task, which never runs concurrently with itself
+    private CSVWriter csvWriter;
+    private long written;
+    private boolean failed;
+
+    /**
+     * @param resumedThroughRow for a resumed upload, the last row number its checkpoint covers;
+     *                          rows after it are dropped from the existing report because they
+     *                          are read and rejected again. {@link #NEW_REPORT} otherwise.
+     */
+    RejectedRecordWriter(File file, long resumedThroughRow, int queueCapacity, long maxRecords, Executor executor) {
+        this.file = file;
+        this.resumedThroughRow = resumedThroughRow;
+        this.maxRecords = maxRecords;
+        this.executor = executor;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Queues a rejected row without blocking. The raw fields follow the row number,
+     * reason code and detail columns.
+     */
+    void submit(long rowNumber, RejectReason reason, String detail, String[] record) {
+        String[] row = new String[record.length + 3];
+        row[0] = String.valueOf(rowNumber);
+        row[1] = reason.name();
+        row[2] = detail;
+        System.arraycopy(record, 0, row, 3, record.length);
+
+        if (queue.offer(row)) {
+            scheduleDrain();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Signals that no more rows will be submitted. Returns immediately; the writer
+     * finishes draining the queue in the background.
+     */
+    void close() {
+        closed = true;
+        scheduleDrain();
+    }
+
+    boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            String[] row;
+            while ((row = queue.poll()) != null) {
+                write(row);
+            }
+            if (closed && !isFinished()) {
+                finish();
+            }
+        } finally {
+            draining.set(false);
+            // Pick up rows or a close() that arrived after the queue was found empty
+            if (!queue.isEmpty() || (closed && !isFinished())) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private void write(String[] row) {
+        if (failed || written >= maxRecords) {
+            dropped.incrementAndGet();
+            return;
+        }
+        try {
+            openIfNeeded();
+            csvWriter.writeNext(row);
+            written++;
+        } catch (IOException e) {
+            logger.error("Error writing rejected records file {}: {}", file, e.getMessage(), e);
+            failed = true;
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void finish() {
+        try {
+            if (!failed) {
+                openIfNeeded();
+            }
+            if (csvWriter != null) {
+                csvWriter.close();
+            }
+        } catch (IOException e) {
+            logger.error("Error closing rejected records file {}: {}", file, e.getMessage(), e);
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private void openIfNeeded() throws IOException {
+        if (csvWriter != null) {
+            return;
+        }
+        // A resumed upload continues the report it started before the restart
+        boolean continuing = resumedThroughRow != NEW_REPORT && file.exists();
+        if (continuing) {
+            written = truncateAfter(resumedThroughRow);
+        }
+        csvWriter = new CSVWriter(new FileWriter(file, continuing));
+        if (!continuing) {
+            csvWriter.writeNext(HEADER);
+        }
+    }
+
+    /**
+     * Rewrites the report without the rows numbered after {@code lastRow} and returns the
+     * number of rows kept, so the per-upload limit carries across the restart. Rows are
+     * matched by number rather than by file length because the report is written
+     * asynchronously and may be behind or ahead of the checkpoint.
+     */
+    private long truncateAfter(long lastRow) throws IOException {
+        File kept = new File(file.getPath() + ".tmp");
+        long rows = 0;
+        try (CSVReader reader = new CSVReader(new FileReader(file));
+             CSVWriter writer = new CSVWriter(new FileWriter(kept))) {
+            writer.writeNext(HEADER);
+            // Skip the header
+            reader.readNext();
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                if (Long.parseLong(row[0]) <= lastRow) {
+                    writer.writeNext(row);
+                    rows++;
+                }
+            }
+        } catch (CsvValidationException | NumberFormatException e) {
+            throw new IOException("Unreadable rejected records file " + file, e);
+        }
+        Files.move(kept.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return rows;
+    }
+}
@@ -2,22 +2,41 @@ package com.servicetransitcalculator.service.impl;
 
 import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import com.servicetransitcalculator.exception.InvalidTapDataException;
+import com.servicetransitcalculator.exception.UploadNotFoundException;
+import com.servicetransitcalculator.model.DownloadArtifact;
+import com.servicetransitcalculator.model.PanToken;
+import com.servicetransitcalculator.model.RejectReason;
 import com.servicetransitcalculator.model.Tap;
+import com.servicetransitcalculator.model.TapPair;
 import com.servicetransitcalculator.model.Trip;
+import com.servicetransitcalculator.model.UploadStatus;
 import com.servicetransitcalculator.service.TransitCalculationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Service
 public class TransitCalculationServiceImpl implements TransitCalculationService {
@@ -26,13 +45,124 @@ public class TransitCalculationServiceImpl implements TransitCalculationService
 
     public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
 
+    public static final int MAX_FARE_BATCH_SIZE = 1000;
+
+    // Accepted input date formats, chosen by the shape of the value in parseDateTime
+    private static final DateTimeFormatter ISO_SECONDS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final DateTimeFormatter ISO_MINUTES = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm");
+    private static final DateTimeFormatter DAY_FIRST_SECONDS = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
+    private static final DateTimeFormatter DAY_FIRST_MINUTES = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm");
+
+    // Digit runs long enough to be a card number, wherever they appear in a malformed row
+    private static final Pattern PAN_LIKE_DIGITS = Pattern.compile("\\d{12,}");
+
+    // Upper bound on rejected-record warnings logged per second; the rest are counted and summarised
+    private static final int REJECTED_LOG_LIMIT_PER_SECOND = 10;
+
+    // Bounds for the per-upload rejected-records side output
+    private static final int REJECTED_QUEUE_CAPACITY = 10_000;
+    private static final long MAX_REJECTED_RECORDS_PER_UPLOAD = 100_000;
+    private static final int MAX_TRACKED_UPLOADS = 100;
+    private static final int REJECTED_WRITER_THREADS = 2;
+
+    // Partitions a node remembers having accepted, so a resent one is not priced twice
+    private static final int MAX_ACCEPTED_PARTITIONS = 10_000;
+
+    // Rows per parse-batch flight recorder event
+    private static final long PARSE_EVENT_BATCH_ROWS = 10_000;
+
     // Thread-safe structure for dynamic fare configuration
     private final Map<String, Double> fareMap = new ConcurrentHashMap<>();
 
+    // Highest configured fare, charged for incomplete trips; refreshed whenever fares are loaded
+    private volatile double maxFare;
+
     // Thread-safe storage for processed trips
     private final List<Trip> trips = Collections.synchronizedList(new ArrayList<>());
 
+    // Rate limiter for rejected-record warnings
+    private final LogRateLimiter rejectedLogLimiter = new LogRateLimiter(REJECTED_LOG_LIMIT_PER_SECOND);
+
+    // Rate limiter for missing-fare warnings, which an unpriced route raises once per trip
+    private final LogRateLimiter missingFareLogLimiter = new LogRateLimiter(REJECTED_LOG_LIMIT_PER_SECOND);
+
+    // Most recent uploads, oldest evicted first along with their rejected-records file
+    private final Map<String, UploadJob> uploads = Collections.synchronizedMap(new LinkedHashMap<String, UploadJob>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UploadJob> eldest) {
+            if (size() > MAX_TRACKED_UPLOADS) {
+                eldest.getValue().getRejectedRecords().getFile().delete();
+                return true;
+            }
+            return false;
+        }
+    });
+
+    // Partition node: batch and partition of every recent request from the coordinator
+    private final Set<String> acceptedPartitions = Collections.synchronizedSet(Collections.newSetFromMap(
+            new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_ACCEPTED_PARTITIONS;
+                }
+            }));
+
+    private final File rejectedRecordsDir = new File(System.getProperty("java.io.tmpdir"), "transit-rejected");
+
+    // Writers only hold a thread while they have rows queued, so a small pool serves every upload
+    private final ExecutorService rejectedRecordsExecutor = Executors.newFixedThreadPool(REJECTED_WRITER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "rejected-records-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Routes taps to worker nodes when running in partitioned mode
+    private final PartitionClient partitionClient;
+
+    // Persists progress of long uploads so they can resume after a restart
+    private final CheckpointStore checkpointStore;
+
+    // Pairing rules and the state machine compiled from them at startup
+    private final PairingRules pairingRules;
+    private final PairingStateMachine pairingStateMachine;
+
+    // Per-card running totals for daily and weekly fare caps
+    private final FareCapIndex fareCapIndex;
+
+    // Serialized downloads, reused until new trips arrive
+    private final DownloadCache downloadCache;
+
+    // Replaces raw PANs with keyed tokens at ingest
+    private final PanTokenizer panTokenizer;
+
+    // Allocation and GC meters reported at the end of every upload
+    private final IngestStats.Meters ingestMeters;
+
     public TransitCalculationServiceImpl() {
+        this(PartitionClient.standalone(), CheckpointStore.disabled(), PairingRules.defaults(), FareCapIndex.disabled(),
+                DownloadCache.temporary(), PanTokenizer.withRandomKey());
+    }
+
+    public TransitCalculationServiceImpl(PartitionClient partitionClient, CheckpointStore checkpointStore,
+                                         PairingRules pairingRules, FareCapIndex fareCapIndex,
+                                         DownloadCache downloadCache, PanTokenizer panTokenizer) {
+        this(partitionClient, checkpointStore, pairingRules, fareCapIndex, downloadCache, panTokenizer,
+                new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public TransitCalculationServiceImpl(PartitionClient partitionClient, CheckpointStore checkpointStore,
+                                         PairingRules pairingRules, FareCapIndex fareCapIndex,
+                                         DownloadCache downloadCache, PanTokenizer panTokenizer,
+                                         MeterRegistry meterRegistry) {
+        this.partitionClient = partitionClient;
+        this.checkpointStore = checkpointStore;
+        this.pairingRules = pairingRules;
+        this.pairingStateMachine = new PairingStateMachine(pairingRules);
+        this.fareCapIndex = fareCapIndex;
+        this.downloadCache = downloadCache;
+        this.panTokenizer = panTokenizer;
+        this.ingestMeters = new IngestStats.Meters(meterRegistry);
         // Initial fares; can be replaced by dynamic loading from a config or database
         loadFareData();
     }
@@ -42,27 +172,134 @@ public class TransitCalculationServiceImpl implements TransitCalculationService
         fareMap.put("Stop2-Stop3", 5.50);
         fareMap.put("Stop1-Stop3", 7.30);
         // Add more stops dynamically in the future
+        maxFare = fareMap.values().stream().max(Double::compare).orElse(0.0);
     }
 
     @Override
-    public void processCsv(MultipartFile file) {
-        try (CSVReader csvReader = new CSVReader(new InputStreamReader(file.getInputStream()))) {
-            List<String[]> records = csvReader.readAll();
+    public String processCsv(MultipartFile file) {
+        String uploadId = UUID.randomUUID().toString();
+        if (!checkpointStore.shouldCheckpoint(file.getSize())) {
+            try (InputStream input = file.getInputStream()) {
+                return runUpload(uploadId, input, file.getSize(), false, null);
+            } catch (IOException e) {
+                logger.error("Error reading CSV file: {}", e.getMessage(), e);
+                throw new RuntimeException("Failed to process CSV file.", e);
+            }
+        }
 
-            if (records.isEmpty()) {
+        // Spool the upload first so it can be resumed if the JVM stops part-way through.
+        // A crash skips the finally block and leaves the checkpoint on disk for resumeUnfinishedUploads.
+        try (InputStream input = new FileInputStream(checkpointStore.spool(uploadId, file.getInputStream()))) {
+            return runUpload(uploadId, input, file.getSize(), true, null);
+        } catch (IOException e) {
+            logger.error("Error spooling CSV file: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to process CSV file.", e);
+        } finally {
+            checkpointStore.delete(uploadId);
+        }
+    }
+
+    /**
+     * Resumes uploads left unfinished by a previous run from their last checkpoint.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedUploads() {
+        for (String uploadId : checkpointStore.unfinishedUploads()) {
+            File spooled = checkpointStore.getInput(uploadId);
+            try (InputStream input = new FileInputStream(spooled)) {
+                // A coordinator splits the whole input again; the nodes skip partitions they already accepted
+                JobCheckpoint checkpoint = partitionClient.isEnabled() ? JobCheckpoint.fromStart() : checkpointStore.load(uploadId);
+                logger.info("Resuming upload {} from row {} with {} pending taps.",
+                        uploadId, checkpoint.getRowsRead(), checkpoint.getTaps().size());
+                runUpload(uploadId, input, spooled.length(), true, checkpoint);
+            } catch (Exception e) {
+                logger.error("Failed to resume upload {}: {}", uploadId, e.getMessage(), e);
+            } finally {
+                checkpointStore.delete(uploadId);
+            }
+        }
+    }
+
+    // Parses, pairs and prices one upload, checkpointing it if it was spooled and optionally continuing from a checkpoint
+    private String runUpload(String uploadId, InputStream input, long inputBytes, boolean spooled, JobCheckpoint resumeFrom) {
+        PipelineEvents.UploadEvent event = new PipelineEvents.UploadEvent();
+        event.begin();
+        UploadJob job = null;
+        UploadJob.State outcome = UploadJob.State.FAILED;
+        DigestInputStream digestInput = partitionClient.isEnabled() ? new DigestInputStream(input, sha256()) : null;
+        try (CSVReader csvReader = new CSVReader(new InputStreamReader(digestInput != null ? digestInput : input))) {
+            // Skip the header
+            if (csvReader.readNext() == null) {
                 logger.error("CSV file is empty.");
                 throw new IllegalArgumentException("CSV file is empty.");
             }
 
-            List<Tap> taps = records.stream()
-                    .skip(1) // Skip the header
-                    .map(this::parseTap)
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+            // Row 1 is the header, so the checkpoint covers rows up to rowsRead + 1
+            job = startUploadJob(uploadId,
+                    resumeFrom != null ? resumeFrom.getRowsRead() + 1 : RejectedRecordWriter.NEW_REPORT);
+            IngestStats stats = job.getStats();
+
+            // Stream rows straight into taps so raw records never accumulate in memory
+            List<Tap> taps = new ArrayList<>();
+            if (resumeFrom != null) {
+                job.restore(resumeFrom);
+                taps.addAll(resumeFrom.getTaps());
+                // Skip by record rather than by line so quoted multi-line fields stay aligned
+                for (long i = 0; i < resumeFrom.getRowsRead() && csvReader.readNext() != null; i++) {
+                    // Already consumed before the checkpoint
+                }
+            }
+            int checkpointedTaps = taps.size();
 
-            taps.stream()
-                    .collect(Collectors.groupingBy(Tap::getPan))
-                    .forEach(this::processTapsForPan);
+            // Coordinator: rows are only split by card here; each node parses, pairs and prices its own
+            PartitionClient.Batch partitions = partitionClient.isEnabled() ? partitionClient.newBatch() : null;
+
+            PipelineEvents.ParseBatchEvent batch = startParseBatch(uploadId, stats);
+            String[] record;
+            while ((record = csvReader.readNext()) != null) {
+                stats.rowRead();
+                if (batch.isEnabled()) {
+                    batch.chars += fieldChars(record);
+                }
+                // Row 1 is the header, so data rows are numbered from 2
+                long rowNumber = stats.getRows() + 1;
+                if (partitions != null) {
+                    PanToken pan = routingToken(record, rowNumber, job);
+                    if (pan != null) {
+                        partitions.add(rowNumber, record, pan);
+                    }
+                } else {
+                    Tap tap = parseTap(record, rowNumber, null, job);
+                    if (tap != null) {
+                        taps.add(tap);
+                    }
+                }
+
+                if (stats.getRows() % PARSE_EVENT_BATCH_ROWS == 0) {
+                    commitParseBatch(batch, stats);
+                    batch = startParseBatch(uploadId, stats);
+                }
+                // The coordinator holds no taps to checkpoint; splitting again on resume is cheap
+                if (partitions == null && spooled && stats.getRows() % checkpointStore.getIntervalRows() == 0) {
+                    checkpoint(uploadId, job, taps.subList(checkpointedTaps, taps.size()));
+                    checkpointedTaps = taps.size();
+                }
+            }
+            commitParseBatch(batch, stats);
+
+            if (partitions != null) {
+                // The batch is named after the content, so nodes recognise a resent or resumed upload
+                String batchId = partitionClient.batchId(digestInput.getMessageDigest().digest());
+                for (String[] rejected : partitionClient.dispatch(batchId, partitions)) {
+                    job.reject(Long.parseLong(rejected[0]), RejectReason.valueOf(rejected[1]), rejected[2],
+                            Arrays.copyOfRange(rejected, 3, rejected.length));
+                }
+            } else {
+                pairTaps(taps);
+            }
+
+            outcome = UploadJob.State.COMPLETED;
+            return uploadId;
 
         } catch (IllegalArgumentException e) {
             // Retain specific exception for empty file
@@ -70,97 +307,387 @@ public class TransitCalculationServiceImpl implements TransitCalculationService
         } catch (Exception e) {
             logger.error("Error processing CSV file: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to process CSV file.", e);
+        } finally {
+            logSuppressedRejects();
+            if (job != null) {
+                // Every exit path must close the rejected records writer, or the report never completes
+                job.finish(outcome);
+                // Failed uploads are reported too; their allocation and GC figures are often the interesting ones
+                job.getStats().report();
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.uploadId = uploadId;
+                event.bytes = inputBytes;
+                event.resumed = resumeFrom != null;
+                if (job != null) {
+                    event.rows = job.getStats().getRows();
+                    event.rejected = job.getStats().getRejected();
+                }
+                event.commit();
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static PipelineEvents.ParseBatchEvent startParseBatch(String uploadId, IngestStats stats) {
+        PipelineEvents.ParseBatchEvent batch = new PipelineEvents.ParseBatchEvent();
+        batch.uploadId = uploadId;
+        batch.firstRow = stats.getRows() + 1;
+        batch.rejectedBefore = stats.getRejected();
+        batch.begin();
+        return batch;
+    }
+
+    private static void commitParseBatch(PipelineEvents.ParseBatchEvent batch, IngestStats stats) {
+        batch.end();
+        long rows = stats.getRows() - batch.firstRow + 1;
+        if (rows > 0 && batch.shouldCommit()) {
+            batch.rows = rows;
+            batch.rejected = stats.getRejected() - batch.rejectedBefore;
+            batch.commit();
+        }
+    }
+
+    private static long fieldChars(String[] record) {
+        long chars = 0;
+        for (String field : record) {
+            chars += field.length();
+        }
+        return chars;
+    }
+
+    // A failed checkpoint only costs resumability, so it is logged rather than failing the upload
+    private void checkpoint(String uploadId, UploadJob job, List<Tap> newTaps) {
+        try {
+            checkpointStore.save(uploadId, job.getStats().getRows(), job.rejectedCounts(), newTaps);
+        } catch (IOException e) {
+            logger.warn("Failed to checkpoint upload {}: {}", uploadId, e.getMessage());
+        }
+    }
+
+    private UploadJob startUploadJob(String uploadId, long resumedThroughRow) {
+        if (!rejectedRecordsDir.isDirectory() && !rejectedRecordsDir.mkdirs()) {
+            throw new IllegalStateException("Unable to create rejected records directory " + rejectedRecordsDir);
+        }
+
+        RejectedRecordWriter writer = new RejectedRecordWriter(
+                new File(rejectedRecordsDir, "rejected-" + uploadId + ".csv"),
+                resumedThroughRow,
+                REJECTED_QUEUE_CAPACITY,
+                MAX_REJECTED_RECORDS_PER_UPLOAD,
+                rejectedRecordsExecutor);
+        UploadJob job = new UploadJob(uploadId, writer, ingestMeters);
+        uploads.put(uploadId, job);
+        return job;
+    }
+
+    @Override
+    public byte[] processPartition(String batchId, int partition, InputStream csv) {
+        String key = batchId + "/" + partition;
+        if (!acceptedPartitions.add(key)) {
+            // Its rejects went back with the first reply, so the coordinator's counts may miss them
+            logger.warn("Ignoring partition {} of batch {}: already accepted.", partition, batchId);
+            return new byte[0];
+        }
+
+        boolean accepted = false;
+        try (CSVReader csvReader = new CSVReader(new InputStreamReader(csv))) {
+            // Partition payloads are produced by the coordinator and carry no header
+            List<Tap> taps = new ArrayList<>();
+            List<String[]> rejected = new ArrayList<>();
+            RejectSink rejects = (rowNumber, reason, detail, record) ->
+                    rejected.add(PartitionClient.rejectedRow(rowNumber, reason, detail, record));
+            String[] row;
+            while ((row = csvReader.readNext()) != null) {
+                PartitionClient.PartitionRow partitionRow = PartitionClient.PartitionRow.parse(row);
+                Tap tap = parseTap(partitionRow.getRecord(), partitionRow.getRowNumber(), partitionRow.getPan(), rejects);
+                if (tap != null) {
+                    taps.add(tap);
+                }
+            }
+            logSuppressedRejects();
+
+            pairTaps(taps);
+            accepted = true;
+            logger.info("Processed partition {} of batch {}: {} taps, {} rejected.",
+                    partition, batchId, taps.size(), rejected.size());
+            return PartitionClient.toCsv(rejected);
+        } catch (Exception e) {
+            logger.error("Error processing partition: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to process partition.", e);
+        } finally {
+            if (!accepted) {
+                // Let the coordinator retry a partition that was not priced
+                acceptedPartitions.remove(key);
+            }
+        }
+    }
+
+    // Sorting by token then time lays each card's taps out contiguously, so no per-card map is built
+    private void pairTaps(List<Tap> taps) {
+        taps.sort(Comparator.comparingLong(Tap::getPanToken).thenComparing(Tap::getDateTimeUtc));
+        int start = 0;
+        for (int i = 1; i <= taps.size(); i++) {
+            if (i == taps.size() || taps.get(i).getPanToken() != taps.get(start).getPanToken()) {
+                processTapsForPan(taps.get(start).getPanToken(), taps.subList(start, i));
+                start = i;
+            }
         }
     }
 
     public Tap parseTap(String[] record) {
-        logger.debug("Parsing record: {}", Arrays.toString(record));
+        return parseTap(record, 0, null, null);
+    }
+
+    // Parses a single row, tokenizing its PAN unless a node received the token from the coordinator.
+    // Rejected rows are reported to the sink when one is given.
+    private Tap parseTap(String[] record, long rowNumber, PanToken routedPan, RejectSink rejects) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Parsing record: {}", Arrays.toString(maskPan(record)));
+        }
         if (record.length != 7) {
-            logger.warn("Invalid record length: {}", Arrays.toString(record));
+            rejectTap(record, rowNumber, RejectReason.INVALID_LENGTH, "Invalid record length: " + record.length, rejects);
             return null;
         }
 
+        // Advanced as each field parses, so a failure is attributed to the field that caused it
+        RejectReason reason = RejectReason.INVALID_ID;
         try {
+            long id = Long.parseLong(record[0]);
+            reason = RejectReason.INVALID_DATE;
             LocalDateTime dateTime = parseDateTime(record[1]); // Use helper method to parse the date
+            reason = RejectReason.INVALID_TAP_TYPE;
+            Tap.TapType tapType = Tap.TapType.fromString(record[2]);
+            reason = RejectReason.INVALID_PAN;
+            PanToken pan = routedPan != null ? routedPan : panTokenizer.tokenize(record[6]);
+            reason = RejectReason.INVALID_FIELD;
             return new Tap(
-                    Long.parseLong(record[0]),
+                    id,
                     dateTime,
-                    Tap.TapType.fromString(record[2]),
+                    tapType,
                     record[3],
                     record[4],
                     record[5],
-                    record[6]
+                    pan
             );
         } catch (Exception e) {
-            logger.warn("Failed to parse record: {} due to error: {}", Arrays.toString(record), e.getMessage());
+            rejectTap(record, rowNumber, reason, e.getMessage(), rejects);
             return null;
         }
     }
 
-    // Helper method to handle multiple date formats
-    private LocalDateTime parseDateTime(String dateString) {
-        List<DateTimeFormatter> formatters = List.of(
-                DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm"),
-                DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss"),
-                DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm")
-        );
-
-        for (DateTimeFormatter formatter : formatters) {
-            try {
-                return LocalDateTime.parse(dateString, formatter);
-            } catch (DateTimeParseException e) {
-                // Continue trying other formats
-            }
+    // Coordinator: checks only what routing needs, the field count and the PAN, and leaves the rest to the nodes
+    private PanToken routingToken(String[] record, long rowNumber, UploadJob job) {
+        if (record.length != 7) {
+            rejectTap(record, rowNumber, RejectReason.INVALID_LENGTH, "Invalid record length: " + record.length, job);
+            return null;
         }
+        try {
+            return panTokenizer.tokenize(record[6]);
+        } catch (IllegalArgumentException e) {
+            rejectTap(record, rowNumber, RejectReason.INVALID_PAN, e.getMessage(), job);
+            return null;
+        }
+    }
 
-        throw new DateTimeParseException("Date does not match any known formats", dateString, 0);
+    private void rejectTap(String[] record, long rowNumber, RejectReason reason, String detail, RejectSink rejects) {
+        String[] masked = maskPan(record);
+        logRejected(masked, detail);
+        if (rejects != null) {
+            rejects.reject(rowNumber, reason, detail, masked);
+        }
     }
 
-    private void processTapsForPan(String pan, List<Tap> taps) {
-        taps.sort(Comparator.comparing(Tap::getDateTimeUtc));
+    // Copies a raw record with its PAN column and any card-number-like digits masked, so card
+    // numbers never reach logs or reports even from rows with missing or extra columns
+    private static String[] maskPan(String[] record) {
+        String[] masked = record.clone();
+        for (int i = 0; i < masked.length; i++) {
+            if (i == 6) {
+                masked[i] = PanToken.mask(masked[i]);
+            } else if (masked[i] != null) {
+                Matcher digits = PAN_LIKE_DIGITS.matcher(masked[i]);
+                masked[i] = digits.replaceAll(run -> PanToken.mask(run.group()));
+            }
+        }
+        return masked;
+    }
 
-        for (int i = 0; i < taps.size(); i++) {
-            Tap tapOn = taps.get(i);
+    // Logs rejected records lazily, at most REJECTED_LOG_LIMIT_PER_SECOND per second
+    private void logRejected(String[] record, String reason) {
+        if (rejectedLogLimiter.tryAcquire()) {
+            logSuppressedRejects();
+            if (logger.isWarnEnabled()) {
+                logger.warn("Failed to parse record: {} due to error: {}", Arrays.toString(record), reason);
+            }
+        }
+    }
 
-            if (i + 1 < taps.size() && tapOn.getTapType() == Tap.TapType.ON) {
-                Tap tapOff = taps.get(i + 1);
+    // Summarises warnings held back by the rate limiters; also called when an upload ends so none go unreported
+    private void logSuppressedRejects() {
+        long suppressed = rejectedLogLimiter.takeSuppressed();
+        if (suppressed > 0) {
+            logger.warn("Suppressed {} rejected record warnings.", suppressed);
+        }
+        long suppressedFares = missingFareLogLimiter.takeSuppressed();
+        if (suppressedFares > 0) {
+            logger.warn("Suppressed {} missing fare warnings.", suppressedFares);
+        }
+    }
 
-                // Skip duplicate taps or taps with the same stop ID
-                if (tapOff.getTapType() == Tap.TapType.OFF && !tapOn.getStopId().equals(tapOff.getStopId())) {
-                    createTrip(tapOn, tapOff, true);
-                    i++; // Skip the processed OFF tap
-                } else {
-                    createTrip(tapOn, null, false);
-                }
-            } else {
-                createTrip(tapOn, null, false);
+    // Picks the one format that can match from the value's shape, so a day-first date costs a
+    // single parse rather than three failed ones, each allocating an exception and stack trace
+    private static LocalDateTime parseDateTime(String dateString) {
+        DateTimeFormatter formatter = null;
+        int length = dateString.length();
+        if (length == 19 || length == 16) {
+            boolean seconds = length == 19;
+            if (dateString.charAt(4) == '-' && dateString.charAt(10) == 'T') {
+                formatter = seconds ? ISO_SECONDS : ISO_MINUTES;
+            } else if (dateString.charAt(2) == '-' && dateString.charAt(10) == ' ') {
+                formatter = seconds ? DAY_FIRST_SECONDS : DAY_FIRST_MINUTES;
             }
         }
+        if (formatter == null) {
+            throw new DateTimeParseException("Date does not match any known formats", dateString, 0);
+        }
+        return LocalDateTime.parse(dateString, formatter);
+    }
+
+    // Taps arrive sorted by time
+    private void processTapsForPan(long panToken, List<Tap> taps) {
+        PipelineEvents.PairCardEvent event = new PipelineEvents.PairCardEvent();
+        event.begin();
+        pairingStateMachine.run(taps, this::emitTrip);
+        event.end();
+        if (event.shouldCommit()) {
+            event.taps = taps.size();
+            event.commit();
+        }
+    }
+
+    private void emitTrip(Tap tapOn, Tap tapOff, PairingStateMachine.Outcome outcome) {
+        trips.add(buildTrip(tapOn, tapOff, outcome, true));
     }
 
     public void createTrip(Tap tapOn, Tap tapOff, boolean isCompleted) {
-        String tripKey = isCompleted ? tapOn.getStopId() + "-" + tapOff.getStopId() : null;
-        double fare = isCompleted
-                ? fareMap.getOrDefault(tripKey, 0.0)
-                : fareMap.values().stream().max(Double::compare).orElse(0.0);
+        emitTrip(tapOn, tapOff, isCompleted ? PairingStateMachine.Outcome.COMPLETED : PairingStateMachine.Outcome.INCOMPLETE);
+    }
 
-        if (isCompleted && fare == 0.0) {
+    /**
+     * Prices a single trip without touching the shared trip list. Fare caps are charged
+     * only for trips that are actually emitted, never for quotes.
+     */
+    private Trip buildTrip(Tap tapOn, Tap tapOff, PairingStateMachine.Outcome outcome, boolean applyFareCap) {
+        PipelineEvents.FareLookupEvent event = new PipelineEvents.FareLookupEvent();
+        event.begin();
+        boolean hasTapOff = tapOff != null;
+        double fare = switch (outcome) {
+            case COMPLETED -> fareMap.getOrDefault(tapOn.getStopId() + "-" + tapOff.getStopId(), 0.0);
+            case INCOMPLETE -> maxFare;
+            case CANCELLED -> 0.0;
+            case TRANSFER -> pairingRules.getTransferFare();
+        };
+
+        if (outcome == PairingStateMachine.Outcome.COMPLETED && fare == 0.0 && missingFareLogLimiter.tryAcquire()) {
             logger.warn("No fare mapping found for trip from {} to {}. Defaulting to $0.00.", tapOn.getStopId(), tapOff.getStopId());
         }
 
-        trips.add(new Trip(
+        long fareCents = Math.round(fare * 100);
+        if (applyFareCap && fareCapIndex.isEnabled()) {
+            long dueCents = fareCapIndex.applyCap(tapOn.getPanToken(),
+                    tapOn.getDateTimeUtc().toLocalDate(), fareCents);
+            fare = dueCents / 100.0;
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.outcome = outcome.name();
+            event.fareKey = tapOn.getStopId() + "-" + (hasTapOff ? tapOff.getStopId() : "N/A");
+            event.fareCents = fareCents;
+            event.dueCents = Math.round(fare * 100);
+            event.commit();
+        }
+
+        return new Trip(
                 tapOn.getDateTimeUtc().toString(),
-                isCompleted ? tapOff.getDateTimeUtc().toString() : null,
-                isCompleted ? calculateDuration(tapOn.getDateTimeUtc(), tapOff.getDateTimeUtc()) : 0,
+                hasTapOff ? tapOff.getDateTimeUtc().toString() : null,
+                hasTapOff ? calculateDuration(tapOn.getDateTimeUtc(), tapOff.getDateTimeUtc()) : 0,
                 tapOn.getStopId(),
-                isCompleted ? tapOff.getStopId() : "N/A",
+                hasTapOff ? tapOff.getStopId() : "N/A",
                 String.format("$%.2f", fare),
                 tapOn.getCompanyId(),
                 tapOn.getBusId(),
-                tapOn.getPan(),
-                isCompleted ? "COMPLETED" : "INCOMPLETE"
-        ));
+                tapOn.getMaskedPan(),
+                outcome.name()
+        );
+    }
+
+    @Override
+    public List<Trip> calculateFares(List<TapPair> pairs) {
+        if (pairs == null || pairs.isEmpty()) {
+            throw new InvalidTapDataException("Fare request must contain at least one tap pair.");
+        }
+        if (pairs.size() > MAX_FARE_BATCH_SIZE) {
+            throw new InvalidTapDataException("Fare request must not contain more than " + MAX_FARE_BATCH_SIZE + " tap pairs.");
+        }
+
+        List<Trip> result = new ArrayList<>(pairs.size());
+        for (int i = 0; i < pairs.size(); i++) {
+            TapPair pair = pairs.get(i);
+            if (pair == null || pair.getOnStopId() == null || pair.getOnDateTimeUtc() == null) {
+                throw new InvalidTapDataException("Tap pair " + i + " is missing the ON stop or time.");
+            }
+            if (pair.hasTapOff() && pair.getOffDateTimeUtc().isBefore(pair.getOnDateTimeUtc())) {
+                throw new InvalidTapDataException("Tap pair " + i + " has an OFF time before its ON time.");
+            }
+
+            PanToken pan;
+            try {
+                pan = panTokenizer.tokenize(pair.getPan());
+            } catch (IllegalArgumentException e) {
+                throw new InvalidTapDataException("Tap pair " + i + " has an invalid PAN: " + e.getMessage());
+            }
+
+            long id = i;
+            Tap tapOn = new Tap(id, pair.getOnDateTimeUtc(), Tap.TapType.ON, pair.getOnStopId(),
+                    pair.getCompanyId(), pair.getBusId(), pan);
+            Tap tapOff = pair.hasTapOff()
+                    ? new Tap(id, pair.getOffDateTimeUtc(), Tap.TapType.OFF, pair.getOffStopId(),
+                            pair.getCompanyId(), pair.getBusId(), pan)
+                    : null;
+            // Paired exactly as in an upload, so a pair that is not a trip is quoted as it would be charged:
+            // e.g. an OFF at the boarding stop adds its own incomplete trip unless stray OFFs are ignored
+            pairingStateMachine.run(tapOff != null ? List.of(tapOn, tapOff) : List.of(tapOn),
+                    (on, off, outcome) -> result.add(buildTrip(on, off, outcome, false)));
+        }
+        return result;
+    }
+
+    @Override
+    public UploadStatus getUploadStatus(String uploadId) {
+        return findUploadJob(uploadId).toStatus();
+    }
+
+    @Override
+    public File getRejectedRecords(String uploadId) {
+        return findUploadJob(uploadId).getRejectedRecords().getFile();
+    }
+
+    private UploadJob findUploadJob(String uploadId) {
+        UploadJob job = uploads.get(uploadId);
+        if (job == null) {
+            throw new UploadNotFoundException("No upload found with ID " + uploadId);
+        }
+        return job;
     }
 
     public long calculateDuration(LocalDateTime start, LocalDateTime end) {
@@ -169,33 +696,99 @@ public class TransitCalculationServiceImpl implements TransitCalculationService
 
     @Override
     public File getProcessedCsv() {
-        File file = new File("trips.csv");
+        return getDownloadArtifact().getCsvFile();
+    }
+
+    @Override
+    public long getResultVersion() {
+        if (partitionClient.isEnabled()) {
+            // Coordinator: results live on the nodes, so there is no local version
+            return DownloadArtifact.UNVERSIONED;
+        }
+        // Trips are only ever appended, so their count identifies the result version
+        return trips.size();
+    }
+
+    @Override
+    public boolean isDownloadGzipped() {
+        // Merged coordinator downloads are written without a gzip copy
+        return !partitionClient.isEnabled() && downloadCache.isGzipEnabled();
+    }
+
+    @Override
+    public DownloadArtifact getDownloadArtifact() {
+        PipelineEvents.DownloadEvent event = new PipelineEvents.DownloadEvent();
+        event.begin();
+        if (partitionClient.isEnabled()) {
+            // Coordinator: merge the trips held by every node, into a file of this download's own
+            List<Trip> merged = partitionClient.fetchTrips();
+            try {
+                DownloadArtifact artifact = downloadCache.writeUnversioned(file -> writeTripsCsv(file, merged));
+                event.rebuilt = true;
+                commitDownloadEvent(event, artifact, merged.size());
+                return artifact;
+            } catch (IOException e) {
+                logger.error("Error writing merged CSV file: {}", e.getMessage(), e);
+                throw new RuntimeException("Failed to generate CSV file.", e);
+            }
+        }
+
+        int version = trips.size();
+        try {
+            DownloadArtifact artifact = downloadCache.get(version, file -> {
+                event.rebuilt = true;
+                synchronized (trips) {
+                    writeTripsCsv(file, trips.subList(0, version));
+                }
+            });
+            commitDownloadEvent(event, artifact, version);
+            return artifact;
+        } catch (IOException e) {
+            logger.error("Error caching processed CSV file: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to generate CSV file.", e);
+        }
+    }
+
+    private static void commitDownloadEvent(PipelineEvents.DownloadEvent event, DownloadArtifact artifact, long tripCount) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.version = artifact.getVersion();
+            event.trips = tripCount;
+            event.bytes = artifact.getCsvFile().length();
+            event.commit();
+        }
+    }
+
+    private void writeTripsCsv(File file, List<Trip> tripsToWrite) {
         try (CSVWriter csvWriter = new CSVWriter(new FileWriter(file))) {
             csvWriter.writeNext(new String[]{
                     "Started", "Finished", "DurationSecs", "FromStopId", "ToStopId", "ChargeAmount", "CompanyId", "BusId", "PAN", "Status"
             });
 
-            synchronized (trips) {
-                trips.forEach(trip -> csvWriter.writeNext(new String[]{
-                        trip.getStarted(),
-                        trip.getFinished(),
-                        String.valueOf(trip.getDurationSecs()),
-                        trip.getFromStopId(),
-                        trip.getToStopId(),
-                        trip.getChargeAmount(),
-                        trip.getCompanyId(),
-                        trip.getBusId(),
-                        trip.getPan(),
-                        trip.getStatus()
-                }));
-            }
+            tripsToWrite.forEach(trip -> csvWriter.writeNext(new String[]{
+                    trip.getStarted(),
+                    trip.getFinished(),
+                    String.valueOf(trip.getDurationSecs()),
+                    trip.getFromStopId(),
+                    trip.getToStopId(),
+                    trip.getChargeAmount(),
+                    trip.getCompanyId(),
+                    trip.getBusId(),
+                    trip.getPan(),
+                    trip.getStatus()
+            }));
         } catch (IOException e) {
             logger.error("Error writing processed CSV file: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to generate CSV file.", e);
         }
-        return file;
     }
 
+    @PreDestroy
+    public void shutdown() {
+        rejectedRecordsExecutor.shutdown();
+    }
+
+    @Override
     public List<Trip> getTrips() {
         synchronized (trips) {
             return new ArrayList<>(trips); // Return a copy to prevent external modifications
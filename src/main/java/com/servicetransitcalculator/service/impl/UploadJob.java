@@ -0,0 +1,93 @@
+package com.servicetransitcalculator.service.impl;
+
+import com.servicetransitcalculator.model.RejectReason;
+import com.servicetransitcalculator.model.UploadStatus;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks a single CSV upload: ingest counters, per-reason reject counts and the
+ * rejected-records side output.
+ */
+class UploadJob implements RejectSink {
+
+    enum State { PROCESSING, COMPLETED, FAILED }
+
+    private final String uploadId;
+    private final IngestStats stats;
+    private final AtomicLongArray rejectedByReason = new AtomicLongArray(RejectReason.values().length);
+    private final RejectedRecordWriter rejectedRecords;
+    private volatile State state = State.PROCESSING;
+
+    UploadJob(String uploadId, RejectedRecordWriter rejectedRecords, IngestStats.Meters meters) {
+        this.uploadId = uploadId;
+        this.stats = new IngestStats(meters);
+        this.rejectedRecords = rejectedRecords;
+    }
+
+    String getUploadId() {
+        return uploadId;
+    }
+
+    IngestStats getStats() {
+        return stats;
+    }
+
+    RejectedRecordWriter getRejectedRecords() {
+        return rejectedRecords;
+    }
+
+    /**
+     * Counts a rejected row and hands it to the side-output writer without waiting.
+     */
+    @Override
+    public void reject(long rowNumber, RejectReason reason, String detail, String[] record) {
+        stats.rowRejected();
+        rejectedByReason.incrementAndGet(reason.ordinal());
+        rejectedRecords.submit(rowNumber, reason, detail, record);
+    }
+
+    /**
+     * Restores the counters of an upload resumed from a checkpoint.
+     */
+    void restore(JobCheckpoint checkpoint) {
+        long[] counts = checkpoint.getRejectedByReason();
+        long rejected = 0;
+        for (int i = 0; i < counts.length; i++) {
+            rejectedByReason.set(i, counts[i]);
+            rejected += counts[i];
+        }
+        stats.restore(checkpoint.getRowsRead(), rejected);
+    }
+
+    long[] rejectedCounts() {
+        long[] counts = new long[rejectedByReason.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = rejectedByReason.get(i);
+        }
+        return counts;
+    }
+
+    void finish(State finalState) {
+        state = finalState;
+        rejectedRecords.close();
+    }
+
+    UploadStatus toStatus() {
+        Map<RejectReason, Long> counts = new EnumMap<>(RejectReason.class);
+        for (RejectReason reason : RejectReason.values()) {
+            counts.put(reason, rejectedByReason.get(reason.ordinal()));
+        }
+        return new UploadStatus(
+                uploadId,
+                state.name(),
+                stats.getRows(),
+                stats.getRejected(),
+                counts,
+                rejectedRecords.getDropped(),
+                state != State.PROCESSING && rejectedRecords.isFinished()
+        );
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.beans.factory.annotation.Value;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.mockito.Mockito.*;
 
@@ -53,4 +54,66 @@ class AuthenticationFilterTest {
         verify(response, times(1)).sendError(HttpServletResponse.SC_UNAUTHORIZED, "Unauthorized: Invalid token");
         verify(filterChain, never()).doFilter(request, response);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldRequireAdminTokenForAdminEndpoints() throws IOException, jakarta.servlet.ServletException {
+        AuthenticationFilter filter = new AuthenticationFilter(Arrays.asList(tokens), List.of("admin1"));
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain filterChain = mock(FilterChain.class);
+
+        when(request.getRequestURI()).thenReturn("/admin/profiling/start");
+        when(request.getServletPath()).thenReturn("/admin/profiling/start");
+        when(request.getHeader("Authorization")).thenReturn("Bearer token1");
+
+        filter.doFilter(request, response, filterChain);
+
+        verify(response, times(1)).sendError(HttpServletResponse.SC_FORBIDDEN, "Forbidden: Admin token required");
+        verify(filterChain, never()).doFilter(request, response);
+
+        when(request.getHeader("Authorization")).thenReturn("Bearer admin1");
+
+        filter.doFilter(request, response, filterChain);
+
+        verify(filterChain, times(1)).doFilter(request, response);
+    }
+
+    @Test
+    void shouldRequireAdminTokenForEncodedAdminPaths() throws IOException, jakarta.servlet.ServletException {
+        AuthenticationFilter filter = new AuthenticationFilter(Arrays.asList(tokens), List.of("admin1"));
+
+        // The container strips path parameters and decodes the servlet path; the raw URI keeps both
+        for (String rawUri : List.of("/admin;x/profiling/start", "/%61dmin/profiling/start")) {
+            HttpServletRequest request = mock(HttpServletRequest.class);
+            HttpServletResponse response = mock(HttpServletResponse.class);
+            FilterChain filterChain = mock(FilterChain.class);
+
+            when(request.getRequestURI()).thenReturn(rawUri);
+            when(request.getServletPath()).thenReturn("/admin/profiling/start");
+            when(request.getHeader("Authorization")).thenReturn("Bearer token1");
+
+            filter.doFilter(request, response, filterChain);
+
+            verify(response, times(1)).sendError(HttpServletResponse.SC_FORBIDDEN, "Forbidden: Admin token required");
+            verify(filterChain, never()).doFilter(request, response);
+        }
+    }
+
+    @Test
+    void shouldCheckPathInfoForAdminEndpoints() throws IOException, jakarta.servlet.ServletException {
+        AuthenticationFilter filter = new AuthenticationFilter(Arrays.asList(tokens), List.of("admin1"));
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain filterChain = mock(FilterChain.class);
+
+        when(request.getRequestURI()).thenReturn("/admin/profiling/recording");
+        when(request.getServletPath()).thenReturn("");
+        when(request.getPathInfo()).thenReturn("/admin/profiling/recording");
+        when(request.getHeader("Authorization")).thenReturn("Bearer token1");
+
+        filter.doFilter(request, response, filterChain);
+
+        verify(response, times(1)).sendError(HttpServletResponse.SC_FORBIDDEN, "Forbidden: Admin token required");
+        verify(filterChain, never()).doFilter(request, response);
+    }
+}
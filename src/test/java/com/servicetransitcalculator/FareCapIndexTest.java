@@ -0,0 +1,129 @@
+package com.servicetransitcalculator;
+
+import com.servicetransitcalculator.service.impl.FareCapIndex;
+import com.servicetransitcalculator.service.impl.PanTokenizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+class FareCapIndexTest {
+
+    private static final LocalDate MONDAY = LocalDate.of(2024, 1, 1);
+
+    private final PanTokenizer tokenizer = new PanTokenizer("test-key");
+
+    @Test
+    void testDailyCap() {
+        FareCapIndex index = new FareCapIndex(10.00, 0, 1000);
+        long pan = token("123456");
+
+        Assertions.assertEquals(325, index.applyCap(pan, MONDAY, 325));
+        Assertions.assertEquals(325, index.applyCap(pan, MONDAY, 325));
+        Assertions.assertEquals(325, index.applyCap(pan, MONDAY, 325));
+        Assertions.assertEquals(25, index.applyCap(pan, MONDAY, 325), "Charge should stop at the daily cap.");
+        Assertions.assertEquals(0, index.applyCap(pan, MONDAY, 325));
+
+        Assertions.assertEquals(325, index.applyCap(pan, MONDAY.plusDays(1), 325), "Daily total should reset the next day.");
+        Assertions.assertEquals(325, index.applyCap(token("654321"), MONDAY, 325), "Other cards are unaffected.");
+    }
+
+    @Test
+    void testWeeklyCap() {
+        FareCapIndex index = new FareCapIndex(5.00, 12.00, 1000);
+        long pan = token("123456");
+
+        Assertions.assertEquals(500, index.applyCap(pan, MONDAY, 730));
+        Assertions.assertEquals(500, index.applyCap(pan, MONDAY.plusDays(1), 730));
+        Assertions.assertEquals(200, index.applyCap(pan, MONDAY.plusDays(2), 730), "Charge should stop at the weekly cap.");
+        Assertions.assertEquals(0, index.applyCap(pan, MONDAY.plusDays(6), 730));
+
+        Assertions.assertEquals(500, index.applyCap(pan, MONDAY.plusDays(7), 730), "Weekly total should reset on Monday.");
+    }
+
+    @Test
+    void testLateTripsCountTowardsWeek() {
+        FareCapIndex index = new FareCapIndex(5.00, 12.00, 1000);
+        long pan = token("123456");
+
+        Assertions.assertEquals(500, index.applyCap(pan, MONDAY.plusDays(2), 730));
+        // The late day's own total is gone, so only the weekly cap applies
+        Assertions.assertEquals(700, index.applyCap(pan, MONDAY, 730), "Late trips in the same week should still be capped.");
+        Assertions.assertEquals(0, index.applyCap(pan, MONDAY.plusDays(1), 730));
+        Assertions.assertEquals(0, index.applyCap(pan, MONDAY.plusDays(3), 730), "Late trips should count towards the week.");
+
+        Assertions.assertEquals(730, index.applyCap(pan, MONDAY.minusDays(1), 730), "Trips for an earlier week are not capped.");
+    }
+
+    @Test
+    void testEvictionKeepsSurvivorsReachable() {
+        FareCapIndex index = new FareCapIndex(1.00, 0, 0);
+        // Alternate weeks so evictions punch holes into the middle of probe runs
+        for (int i = 0; i < 400; i++) {
+            index.applyCap(i + 1, i % 2 == 0 ? MONDAY : MONDAY.plusDays(7), 60);
+        }
+        // Fill every stripe so each one evicts the first week
+        for (int i = 0; i < 5000; i++) {
+            index.applyCap(100_000 + i, MONDAY.plusDays(8), 60);
+        }
+
+        for (int i = 1; i < 400; i += 2) {
+            if (index.applyCap(i + 1, MONDAY.plusDays(7), 60) != 40) {
+                Assertions.fail("Card " + (i + 1) + " lost its daily total after eviction.");
+            }
+        }
+    }
+
+    @Test
+    void testExpiredWeeksAreEvicted() {
+        // Minimum stripe size keeps the index small enough to fill
+        FareCapIndex index = new FareCapIndex(1.00, 0, 0);
+        for (int i = 0; i < 5000; i++) {
+            index.applyCap(i + 1, MONDAY, 100);
+        }
+        long filled = index.size();
+
+        for (int i = 0; i < 5000; i++) {
+            index.applyCap(100_000 + i, MONDAY.plusDays(7), 100);
+        }
+
+        Assertions.assertTrue(index.size() <= filled, "Index should stay within its bounded capacity.");
+        Assertions.assertEquals(0, index.applyCap(100_000, MONDAY.plusDays(7), 100),
+                "Cards seen after eviction should still be capped.");
+    }
+
+    @Test
+    void testFarFutureTripDoesNotEvictCurrentCards() {
+        Clock monday = Clock.fixed(MONDAY.atTime(12, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        FareCapIndex index = new FareCapIndex(1.00, 0, 0, monday);
+        // Few enough that every card is tracked
+        for (int i = 0; i < 200; i++) {
+            index.applyCap(i + 1, MONDAY, 100);
+        }
+
+        // A mistyped year fills the stripes; expiry must still follow the clock, not the data
+        for (int i = 0; i < 5000; i++) {
+            index.applyCap(100_000 + i, LocalDate.of(2099, 1, 5), 100);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            if (index.applyCap(i + 1, MONDAY, 100) != 0) {
+                Assertions.fail("Card " + (i + 1) + " was evicted by a trip dated 2099.");
+            }
+        }
+    }
+
+    @Test
+    void testDisabled() {
+        FareCapIndex index = FareCapIndex.disabled();
+
+        Assertions.assertFalse(index.isEnabled());
+        Assertions.assertEquals(325, index.applyCap(token("123456"), MONDAY, 325));
+    }
+
+    private long token(String pan) {
+        return tokenizer.tokenize(pan).getValue();
+    }
+}
@@ -0,0 +1,111 @@
+package com.servicetransitcalculator;
+
+import com.servicetransitcalculator.model.PanToken;
+import com.servicetransitcalculator.model.Tap;
+import com.servicetransitcalculator.service.impl.PairingRules;
+import com.servicetransitcalculator.service.impl.PairingStateMachine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+class PairingStateMachineTest {
+
+    private static final LocalDateTime START = LocalDateTime.parse("2024-01-01T12:00:00");
+    private static final PanToken PAN = new PanToken(1L, 3456, 6);
+
+    @Test
+    void testDefaultRules_MatchOriginalPairing() {
+        PairingStateMachine machine = new PairingStateMachine(PairingRules.defaults());
+        List<Tap> taps = List.of(
+                tap(1, 0, Tap.TapType.ON, "Stop1"),
+                tap(2, 15, Tap.TapType.OFF, "Stop2"),
+                tap(3, 20, Tap.TapType.ON, "Stop2"),
+                tap(4, 25, Tap.TapType.OFF, "Stop2"),
+                tap(5, 30, Tap.TapType.ON, "Stop3")
+        );
+
+        List<String> emitted = run(machine, taps);
+
+        Assertions.assertEquals(List.of(
+                "Stop1-Stop2 COMPLETED",
+                "Stop2-N/A INCOMPLETE",
+                "Stop2-N/A INCOMPLETE",
+                "Stop3-N/A INCOMPLETE"
+        ), emitted);
+    }
+
+    @Test
+    void testSameStopCancelled() {
+        PairingRules rules = new PairingRules(PairingRules.SameStopRule.CANCELLED, PairingRules.StrayOffRule.INCOMPLETE, 0, 0, 0.0);
+        PairingStateMachine machine = new PairingStateMachine(rules);
+
+        List<String> emitted = run(machine, List.of(
+                tap(1, 0, Tap.TapType.ON, "Stop1"),
+                tap(2, 1, Tap.TapType.OFF, "Stop1")
+        ));
+
+        Assertions.assertEquals(List.of("Stop1-Stop1 CANCELLED"), emitted);
+    }
+
+    @Test
+    void testMaxTripDuration() {
+        PairingRules rules = new PairingRules(PairingRules.SameStopRule.INCOMPLETE, PairingRules.StrayOffRule.IGNORE, 60, 0, 0.0);
+        PairingStateMachine machine = new PairingStateMachine(rules);
+
+        List<String> emitted = run(machine, List.of(
+                tap(1, 0, Tap.TapType.ON, "Stop1"),
+                tap(2, 90, Tap.TapType.OFF, "Stop2")
+        ));
+
+        Assertions.assertEquals(List.of("Stop1-N/A INCOMPLETE"), emitted);
+    }
+
+    @Test
+    void testTransferWindow() {
+        PairingRules rules = new PairingRules(PairingRules.SameStopRule.INCOMPLETE, PairingRules.StrayOffRule.INCOMPLETE, 0, 30, 0.0);
+        PairingStateMachine machine = new PairingStateMachine(rules);
+
+        List<String> emitted = run(machine, List.of(
+                tap(1, 0, Tap.TapType.ON, "Stop1"),
+                tap(2, 10, Tap.TapType.OFF, "Stop2"),
+                tap(3, 20, Tap.TapType.ON, "Stop2"),
+                tap(4, 30, Tap.TapType.OFF, "Stop3"),
+                tap(5, 40, Tap.TapType.ON, "Stop3"),
+                tap(6, 50, Tap.TapType.OFF, "Stop1")
+        ));
+
+        // Only one transfer is allowed per completed trip
+        Assertions.assertEquals(List.of(
+                "Stop1-Stop2 COMPLETED",
+                "Stop2-Stop3 TRANSFER",
+                "Stop3-Stop1 COMPLETED"
+        ), emitted);
+    }
+
+    @Test
+    void testSinglePair() {
+        PairingStateMachine machine = new PairingStateMachine(PairingRules.defaults());
+
+        Assertions.assertEquals(List.of("Stop1-Stop2 COMPLETED"),
+                run(machine, List.of(tap(1, 0, Tap.TapType.ON, "Stop1"), tap(2, 5, Tap.TapType.OFF, "Stop2"))));
+        // The OFF does not close the trip, so it is charged on its own as well
+        Assertions.assertEquals(List.of("Stop1-N/A INCOMPLETE", "Stop1-N/A INCOMPLETE"),
+                run(machine, List.of(tap(1, 0, Tap.TapType.ON, "Stop1"), tap(2, 5, Tap.TapType.OFF, "Stop1"))));
+        Assertions.assertEquals(List.of("Stop1-N/A INCOMPLETE"),
+                run(machine, List.of(tap(1, 0, Tap.TapType.ON, "Stop1"))));
+    }
+
+    private static List<String> run(PairingStateMachine machine, List<Tap> taps) {
+        List<String> emitted = new ArrayList<>();
+        machine.run(taps, (tapOn, tapOff, outcome) ->
+                emitted.add(tapOn.getStopId() + "-" + (tapOff == null ? "N/A" : tapOff.getStopId()) + " " + outcome));
+        return emitted;
+    }
+
+    private static Tap tap(long id, int minutes, Tap.TapType type, String stopId) {
+        return new Tap(id, START.plusMinutes(minutes), type, stopId, "Company1", "Bus1", PAN);
+    }
+}
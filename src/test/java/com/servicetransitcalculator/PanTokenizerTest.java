@@ -0,0 +1,88 @@
+package com.servicetransitcalculator;
+
+import com.servicetransitcalculator.model.PanToken;
+import com.servicetransitcalculator.service.impl.PanTokenizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+class PanTokenizerTest {
+
+    @Test
+    void testTokensAreStablePerKey() {
+        PanTokenizer tokenizer = new PanTokenizer("key-1");
+
+        Assertions.assertEquals(tokenizer.tokenize("4000000000001234").getValue(),
+                new PanTokenizer("key-1").tokenize("4000000000001234").getValue());
+        Assertions.assertNotEquals(tokenizer.tokenize("4000000000001234").getValue(),
+                new PanTokenizer("key-2").tokenize("4000000000001234").getValue(), "Tokens should depend on the key.");
+        Assertions.assertNotEquals(tokenizer.tokenize("123456").getValue(), tokenizer.tokenize("0123456").getValue(),
+                "Leading zeros are significant.");
+    }
+
+    @Test
+    void testGeneratedKeyIsKept(@TempDir Path dir) {
+        String keyFile = dir.resolve("pan-token.key").toString();
+        PanTokenizer first = new PanTokenizer("", keyFile, List.of());
+        PanTokenizer restarted = new PanTokenizer("", keyFile, List.of());
+
+        Assertions.assertEquals(first.tokenize("4000000000001234").getValue(), restarted.tokenize("4000000000001234").getValue(),
+                "A generated key should survive a restart.");
+    }
+
+    @Test
+    void testKeyFileOthersCouldWriteIsRefused(@TempDir Path dir) throws Exception {
+        Assumptions.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path keyFile = dir.resolve("pan-token.key");
+        new PanTokenizer("", keyFile.toString(), List.of());
+        Assertions.assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(keyFile)));
+
+        // A key another user planted, or could rewrite, must not be trusted
+        Files.setPosixFilePermissions(keyFile, PosixFilePermissions.fromString("rw-rw-rw-"));
+        Assertions.assertThrows(IllegalStateException.class, () -> new PanTokenizer("", keyFile.toString(), List.of()));
+
+        Path link = dir.resolve("linked.key");
+        Files.createSymbolicLink(link, keyFile);
+        Assertions.assertThrows(IllegalStateException.class, () -> new PanTokenizer("", link.toString(), List.of()));
+    }
+
+    @Test
+    void testPartitionedModeRequiresKey(@TempDir Path dir) {
+        String keyFile = dir.resolve("pan-token.key").toString();
+
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> new PanTokenizer("", keyFile, List.of("http://localhost:9091")));
+        Assertions.assertDoesNotThrow(() -> new PanTokenizer("key-1", keyFile, List.of("http://localhost:9091")));
+    }
+
+    @Test
+    void testRejectsNonDigitPans() {
+        PanTokenizer tokenizer = new PanTokenizer("key-1");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tokenizer.tokenize("1.23457E+15"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tokenizer.tokenize("4000 0000 0000 1234"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tokenizer.tokenize(""));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tokenizer.tokenize(null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tokenizer.tokenize("12345678901234567890"));
+    }
+
+    @Test
+    void testMaskedPan() {
+        PanTokenizer tokenizer = new PanTokenizer("key-1");
+
+        PanToken token = tokenizer.tokenize("4000000000000012");
+        Assertions.assertEquals("************0012", token.masked());
+        Assertions.assertEquals("****", tokenizer.tokenize("1234").masked(), "Short PANs are masked entirely.");
+
+        PanToken rebuilt = PanToken.fromMasked(token.getValue(), token.masked());
+        Assertions.assertEquals(token.getValue(), rebuilt.getValue());
+        Assertions.assertEquals(token.masked(), rebuilt.masked());
+    }
+}
@@ -0,0 +1,39 @@
+package com.servicetransitcalculator;
+
+import com.servicetransitcalculator.service.impl.PanTokenizer;
+import com.servicetransitcalculator.service.impl.PartitionClient;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class PartitionClientTest {
+
+    private static final List<String> NODES = List.of("http://node-a", "http://node-b", "http://node-c");
+
+    @Test
+    void testPartitionOf_StableAndInRange() {
+        PartitionClient client = new PartitionClient(NODES, "token1");
+        PanTokenizer tokenizer = new PanTokenizer("test-key");
+
+        int[] counts = new int[NODES.size()];
+        for (int i = 0; i < 3000; i++) {
+            long token = tokenizer.tokenize(String.valueOf(4000000000000000L + i)).getValue();
+            int partition = client.partitionOf(token);
+            Assertions.assertEquals(partition, client.partitionOf(token), "A card must always map to the same node.");
+            counts[partition]++;
+        }
+        for (int count : counts) {
+            Assertions.assertTrue(count > 800, "Cards should spread evenly across nodes: " + count);
+        }
+    }
+
+    @Test
+    void testPartitionOf_NegativeTokens() {
+        PartitionClient client = new PartitionClient(NODES, "token1");
+
+        Assertions.assertEquals(2, client.partitionOf(-1L));
+        Assertions.assertEquals(1, client.partitionOf(Long.MIN_VALUE));
+        Assertions.assertEquals(1, client.partitionOf(Long.MAX_VALUE));
+    }
+}
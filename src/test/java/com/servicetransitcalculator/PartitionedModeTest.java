@@ -0,0 +1,104 @@
+package com.servicetransitcalculator;
+
+import com.servicetransitcalculator.model.RejectReason;
+import com.servicetransitcalculator.model.UploadStatus;
+import com.servicetransitcalculator.service.TransitCalculationService;
+import com.servicetransitcalculator.service.impl.CheckpointStore;
+import com.servicetransitcalculator.service.impl.DownloadCache;
+import com.servicetransitcalculator.service.impl.FareCapIndex;
+import com.servicetransitcalculator.service.impl.PairingRules;
+import com.servicetransitcalculator.service.impl.PanTokenizer;
+import com.servicetransitcalculator.service.impl.PartitionClient;
+import com.servicetransitcalculator.service.impl.TransitCalculationServiceImpl;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Runs a coordinator against two worker instances started on random ports and checks
+ * that the download merges the trips priced on both, that rows the workers reject are
+ * counted in the upload's status and that resending an upload prices nothing twice.
+ */
+class PartitionedModeTest {
+
+    private static ConfigurableApplicationContext workerA;
+    private static ConfigurableApplicationContext workerB;
+
+    @BeforeAll
+    static void startWorkers() {
+        workerA = startWorker();
+        workerB = startWorker();
+    }
+
+    @AfterAll
+    static void stopWorkers() {
+        workerA.close();
+        workerB.close();
+    }
+
+    @Test
+    void testDownloadMergesTripsFromEveryNode() throws Exception {
+        PartitionClient partitionClient = new PartitionClient(List.of(baseUrl(workerA), baseUrl(workerB)), "token1");
+        TransitCalculationServiceImpl coordinator = new TransitCalculationServiceImpl(
+                partitionClient, CheckpointStore.disabled(), PairingRules.defaults(), FareCapIndex.disabled(),
+                DownloadCache.temporary(), new PanTokenizer("test-key"));
+
+        int cards = 20;
+        StringBuilder csv = new StringBuilder("Id,DateTimeUTC,TapType,StopId,CompanyId,BusId,PAN\n");
+        for (int i = 0; i < cards; i++) {
+            String pan = String.valueOf(5500000000000000L + i);
+            csv.append(2 * i + 1).append(",2024-01-01T12:00:00,ON,Stop1,Company1,Bus1,").append(pan).append('\n');
+            csv.append(2 * i + 2).append(",2024-01-01T12:15:00,OFF,Stop2,Company1,Bus1,").append(pan).append('\n');
+        }
+        // Dates are only parsed on the workers, so this row is rejected there
+        csv.append("99,InvalidDate,ON,Stop1,Company1,Bus1,5500000000000000\n");
+        MockMultipartFile upload = new MockMultipartFile("file", "taps.csv", "text/csv", csv.toString().getBytes());
+        String uploadId = coordinator.processCsv(upload);
+
+        UploadStatus status = coordinator.getUploadStatus(uploadId);
+        Assertions.assertEquals(2 * cards + 1, status.getRowsRead());
+        Assertions.assertEquals(1, status.getRowsRejected());
+        Assertions.assertEquals(1L, status.getRejectedByReason().get(RejectReason.INVALID_DATE));
+        for (int i = 0; i < 50 && !coordinator.getUploadStatus(uploadId).isRejectedReportReady(); i++) {
+            Thread.sleep(100);
+        }
+        List<String> rejected = Files.readAllLines(coordinator.getRejectedRecords(uploadId).toPath());
+        Assertions.assertTrue(rejected.stream().anyMatch(line -> line.contains("InvalidDate")));
+        Assertions.assertFalse(rejected.stream().anyMatch(line -> line.contains("5500000000000000")));
+
+        // A client retry of the same file: every partition has been accepted already
+        coordinator.processCsv(upload);
+
+        int tripsA = workerA.getBean(TransitCalculationService.class).getTrips().size();
+        int tripsB = workerB.getBean(TransitCalculationService.class).getTrips().size();
+        Assertions.assertTrue(tripsA > 0 && tripsB > 0, "Both nodes should price some cards: " + tripsA + ", " + tripsB);
+        Assertions.assertEquals(cards, tripsA + tripsB);
+
+        List<String> lines = Files.readAllLines(coordinator.getDownloadArtifact().getCsvFile().toPath());
+        Assertions.assertEquals(cards + 1, lines.size(), "Download should hold a header and every node's trips.");
+        Assertions.assertTrue(lines.stream().skip(1).allMatch(line -> line.contains("\"COMPLETED\"")));
+        Assertions.assertFalse(lines.stream().anyMatch(line -> line.contains("5500000000000000")),
+                "Nodes should only ever see masked PANs.");
+    }
+
+    private static ConfigurableApplicationContext startWorker() {
+        return new SpringApplicationBuilder(ServiceTransitCalculatorApplication.class)
+                .properties(
+                        "server.port=0",
+                        "logging.request-response.enabled=false",
+                        "servicetransitcalculator.checkpoint.enabled=false",
+                        "servicetransitcalculator.pan.token-key=test-key")
+                .run();
+    }
+
+    private static String baseUrl(ConfigurableApplicationContext context) {
+        return "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+}
@@ -1,18 +1,35 @@
 package com.servicetransitcalculator;
 
+import com.servicetransitcalculator.exception.InvalidTapDataException;
+import com.servicetransitcalculator.model.DownloadArtifact;
+import com.servicetransitcalculator.model.PanToken;
+import com.servicetransitcalculator.model.RejectReason;
 import com.servicetransitcalculator.model.Tap;
+import com.servicetransitcalculator.model.TapPair;
+import com.servicetransitcalculator.model.Trip;
+import com.servicetransitcalculator.model.UploadStatus;
+import com.servicetransitcalculator.service.impl.CheckpointStore;
+import com.servicetransitcalculator.service.impl.DownloadCache;
+import com.servicetransitcalculator.service.impl.FareCapIndex;
+import com.servicetransitcalculator.service.impl.PairingRules;
+import com.servicetransitcalculator.service.impl.PanTokenizer;
+import com.servicetransitcalculator.service.impl.PartitionClient;
 import com.servicetransitcalculator.service.impl.TransitCalculationServiceImpl;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 import static org.mockito.Mockito.when;
 
@@ -22,6 +39,9 @@ class TransitCalculationServiceImplTest {
 
     public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
 
+    private static final PanTokenizer TOKENIZER = new PanTokenizer("test-key");
+    private static final PanToken PAN = TOKENIZER.tokenize("123456");
+
     @BeforeEach
     void setUp() {
         service = new TransitCalculationServiceImpl();
@@ -43,13 +63,21 @@ class TransitCalculationServiceImplTest {
         Assertions.assertEquals("Stop1", result.getStopId());
         Assertions.assertEquals("Company1", result.getCompanyId());
         Assertions.assertEquals("Bus1", result.getBusId());
-        Assertions.assertEquals("123456", result.getPan());
+        Assertions.assertEquals("**3456", result.getMaskedPan());
+    }
+
+    @Test
+    void testParseTap_ScientificNotationPan() {
+        // Spreadsheet-mangled PANs would merge different cards, so they are rejected
+        String[] mangledTap = {"1", "2024-01-01T12:00:00", "ON", "Stop1", "Company1", "Bus1", "1.23457E+15"};
+
+        Assertions.assertNull(service.parseTap(mangledTap), "Non-digit PAN should be rejected.");
     }
 
     @Test
     void testCreateTrip_NoFareMapping() {
-        Tap tapOn = new Tap(1L, LocalDateTime.parse("2024-01-01T12:00:00", DATE_FORMATTER), Tap.TapType.ON, "Stop1", "Company1", "Bus1", "123456");
-        Tap tapOff = new Tap(2L, LocalDateTime.parse("2024-01-01T12:15:00", DATE_FORMATTER), Tap.TapType.OFF, "Stop4", "Company1", "Bus1", "123456");
+        Tap tapOn = new Tap(1L, LocalDateTime.parse("2024-01-01T12:00:00", DATE_FORMATTER), Tap.TapType.ON, "Stop1", "Company1", "Bus1", PAN);
+        Tap tapOff = new Tap(2L, LocalDateTime.parse("2024-01-01T12:15:00", DATE_FORMATTER), Tap.TapType.OFF, "Stop4", "Company1", "Bus1", PAN);
 
         service.createTrip(tapOn, tapOff, true);
 
@@ -61,6 +89,20 @@ class TransitCalculationServiceImplTest {
         );
     }
 
+    @Test
+    void testParseTap_AcceptedDateFormats() {
+        LocalDateTime expected = LocalDateTime.parse("2024-01-31T12:05:00");
+        for (String date : List.of("2024-01-31T12:05:00", "2024-01-31T12:05", "31-01-2024 12:05:00", "31-01-2024 12:05")) {
+            Tap result = service.parseTap(new String[]{"1", date, "ON", "Stop1", "Company1", "Bus1", "123456"});
+            Assertions.assertNotNull(result, "Date should parse: " + date);
+            Assertions.assertEquals(expected, result.getDateTimeUtc());
+        }
+        for (String date : List.of("2024-01-31 12:05:00", "31-01-2024T12:05", "2024-13-31T12:05:00", "")) {
+            Assertions.assertNull(service.parseTap(new String[]{"1", date, "ON", "Stop1", "Company1", "Bus1", "123456"}),
+                    "Date should be rejected: " + date);
+        }
+    }
+
     @Test
     void testParseTap_InvalidTap() {
         String[] invalidTap = {"1", "InvalidDate", "ON", "Stop1", "Company1", "Bus1", "123456"};
@@ -100,6 +142,162 @@ class TransitCalculationServiceImplTest {
         Assertions.assertDoesNotThrow(() -> service.processCsv(file));
     }
 
+    @Test
+    void testProcessCsv_RejectedRecordsReport() throws Exception {
+        String csvContent = """
+                Id,DateTimeUTC,TapType,StopId,CompanyId,BusId,PAN
+                1,2024-01-01T12:00:00,ON,Stop1,Company1,Bus1,123456
+                2,InvalidDate,ON,Stop1,Company1,Bus1,123456
+                3,2024-01-01T12:15:00,SIDEWAYS,Stop2,Company1,Bus1,123456
+                4,2024-01-01T12:15:00,OFF
+                """;
+        String uploadId = service.processCsv(mockMultipartFile(csvContent));
+
+        UploadStatus status = service.getUploadStatus(uploadId);
+        Assertions.assertEquals(4, status.getRowsRead());
+        Assertions.assertEquals(3, status.getRowsRejected());
+        Assertions.assertEquals(1L, status.getRejectedByReason().get(RejectReason.INVALID_DATE));
+        Assertions.assertEquals(1L, status.getRejectedByReason().get(RejectReason.INVALID_TAP_TYPE));
+        Assertions.assertEquals(1L, status.getRejectedByReason().get(RejectReason.INVALID_LENGTH));
+
+        // The report is written in the background; wait briefly for it to complete
+        for (int i = 0; i < 50 && !service.getUploadStatus(uploadId).isRejectedReportReady(); i++) {
+            Thread.sleep(100);
+        }
+        Assertions.assertTrue(service.getUploadStatus(uploadId).isRejectedReportReady());
+
+        List<String> lines = Files.readAllLines(service.getRejectedRecords(uploadId).toPath());
+        Assertions.assertEquals(4, lines.size(), "Rejected report should contain a header and three rows.");
+        Assertions.assertTrue(lines.get(1).startsWith("\"3\",\"INVALID_DATE\""));
+    }
+
+    @Test
+    void testProcessCsv_PansMaskedInOutputs() throws Exception {
+        String csvContent = """
+                Id,DateTimeUTC,TapType,StopId,CompanyId,BusId,PAN
+                1,2024-01-01T12:00:00,ON,Stop1,Company1,Bus1,5500000000001234
+                2,2024-01-01T12:15:00,OFF,Stop2,Company1,Bus1,5500000000001234
+                3,2024-01-01T12:20:00,ON,Stop1,Company1,Bus1,1.23457E+15
+                """;
+
+        String uploadId = service.processCsv(mockMultipartFile(csvContent));
+
+        Assertions.assertEquals(1L, service.getUploadStatus(uploadId).getRejectedByReason().get(RejectReason.INVALID_PAN));
+        Assertions.assertEquals("************1234", service.getTrips().get(0).getPan());
+        String download = Files.readString(service.getProcessedCsv().toPath());
+        Assertions.assertFalse(download.contains("5500000000001234"), "Downloads should only contain masked PANs.");
+
+        for (int i = 0; i < 50 && !service.getUploadStatus(uploadId).isRejectedReportReady(); i++) {
+            Thread.sleep(20);
+        }
+        String rejected = Files.readString(service.getRejectedRecords(uploadId).toPath());
+        Assertions.assertTrue(rejected.contains("*******E+15"), "Rejected report should mask the PAN column.");
+    }
+
+    @Test
+    void testProcessCsv_PansMaskedInShortAndLongRows() throws Exception {
+        String csvContent = """
+                Id,DateTimeUTC,TapType,StopId,CompanyId,BusId,PAN
+                4,2024-01-01T12:15:00,OFF,Stop2,Company1,5500000000001234
+                5,2024-01-01T12:20:00,ON,Stop1,Company1,Bus1,4000000000005678,Card 4111111111119999
+                """;
+
+        String uploadId = service.processCsv(mockMultipartFile(csvContent));
+
+        Assertions.assertEquals(2L, service.getUploadStatus(uploadId).getRejectedByReason().get(RejectReason.INVALID_LENGTH));
+        for (int i = 0; i < 50 && !service.getUploadStatus(uploadId).isRejectedReportReady(); i++) {
+            Thread.sleep(20);
+        }
+        String rejected = Files.readString(service.getRejectedRecords(uploadId).toPath());
+        Assertions.assertFalse(rejected.contains("5500000000001234"), "Short rows should not leak a PAN: " + rejected);
+        Assertions.assertFalse(rejected.contains("4000000000005678"), "Long rows should not leak the PAN column: " + rejected);
+        Assertions.assertFalse(rejected.contains("4111111111119999"), "Long rows should not leak PANs in extra columns: " + rejected);
+        Assertions.assertTrue(rejected.contains("************1234"), rejected);
+        Assertions.assertTrue(rejected.contains("Card ************9999"), rejected);
+    }
+
+    @Test
+    void testProcessCsv_CheckpointsRemovedOnCompletion(@TempDir Path checkpointDir) throws Exception {
+        TransitCalculationServiceImpl checkpointingService = new TransitCalculationServiceImpl(
+                PartitionClient.standalone(), new CheckpointStore(true, checkpointDir.toString(), 1), PairingRules.defaults(),
+                FareCapIndex.disabled(), DownloadCache.temporary(), TOKENIZER);
+        String csvContent = """
+                Id,DateTimeUTC,TapType,StopId,CompanyId,BusId,PAN
+                1,2024-01-01T12:00:00,ON,Stop1,Company1,Bus1,123456
+                2,2024-01-01T12:15:00,OFF,Stop2,Company1,Bus1,123456
+                """;
+
+        checkpointingService.processCsv(mockMultipartFile(csvContent));
+
+        Assertions.assertEquals(1, checkpointingService.getTrips().size());
+        try (var remaining = Files.list(checkpointDir)) {
+            // Only the instance lock file stays
+            Assertions.assertEquals(0, remaining.filter(Files::isDirectory).count(),
+                    "Completed uploads should leave no checkpoint behind.");
+        }
+    }
+
+    @Test
+    void testResumeUnfinishedUploads(@TempDir Path checkpointDir) throws Exception {
+        // Simulate an upload that was spooled before the JVM stopped
+        Path spooled = Files.createDirectories(checkpointDir.resolve("interrupted-upload")).resolve("input.csv");
+        Files.writeString(spooled, """
+                Id,DateTimeUTC,TapType,StopId,CompanyId,BusId,PAN
+                1,2024-01-01T12:00:00,ON,Stop1,Company1,Bus1,123456
+                2,2024-01-01T12:15:00,OFF,Stop2,Company1,Bus1,123456
+                """);
+        TransitCalculationServiceImpl restartedService = new TransitCalculationServiceImpl(
+                PartitionClient.standalone(), new CheckpointStore(true, checkpointDir.toString(), 1), PairingRules.defaults(),
+                FareCapIndex.disabled(), DownloadCache.temporary(), TOKENIZER);
+
+        restartedService.resumeUnfinishedUploads();
+
+        Assertions.assertEquals(1, restartedService.getTrips().size());
+        Assertions.assertEquals("COMPLETED", restartedService.getUploadStatus("interrupted-upload").getState());
+        Assertions.assertFalse(Files.exists(spooled.getParent()), "Resumed uploads should be cleaned up.");
+    }
+
+    @Test
+    void testProcessPartition_RejectsReturnedAndRepeatIgnored() {
+        // Row number, the upload fields except the PAN, then the token and masked PAN, as sent by the coordinator
+        String partition = """
+                2,1,2024-01-01T12:00:00,ON,Stop1,Company1,Bus1,42,**3456
+                3,2,2024-01-01T12:15:00,OFF,Stop2,Company1,Bus1,42,**3456
+                4,3,InvalidDate,ON,Stop1,Company1,Bus1,42,**3456
+                """;
+
+        String rejected = new String(service.processPartition("batch-1", 0, new ByteArrayInputStream(partition.getBytes())));
+        byte[] repeated = service.processPartition("batch-1", 0, new ByteArrayInputStream(partition.getBytes()));
+
+        Assertions.assertEquals(1, service.getTrips().size(), "A repeated partition should not be priced again.");
+        Assertions.assertEquals("**3456", service.getTrips().get(0).getPan());
+        Assertions.assertTrue(rejected.startsWith("\"4\",\"INVALID_DATE\""), rejected);
+        Assertions.assertTrue(rejected.contains("\"**3456\""), rejected);
+        Assertions.assertEquals(0, repeated.length);
+
+        service.processPartition("batch-2", 0, new ByteArrayInputStream(partition.getBytes()));
+        Assertions.assertEquals(2, service.getTrips().size(), "Another batch should be priced as usual.");
+    }
+
+    @Test
+    void testProcessCsv_FareCapAcrossUploads() {
+        TransitCalculationServiceImpl cappingService = new TransitCalculationServiceImpl(
+                PartitionClient.standalone(), CheckpointStore.disabled(), PairingRules.defaults(),
+                new FareCapIndex(10.00, 0, 1000), DownloadCache.temporary(), TOKENIZER);
+        String csvContent = """
+                Id,DateTimeUTC,TapType,StopId,CompanyId,BusId,PAN
+                1,2024-01-01T08:00:00,ON,Stop1,Company1,Bus1,123456
+                2,2024-01-01T08:15:00,OFF,Stop3,Company1,Bus1,123456
+                """;
+
+        cappingService.processCsv(mockMultipartFile(csvContent));
+        cappingService.processCsv(mockMultipartFile(csvContent.replace("08:", "17:")));
+
+        List<Trip> trips = cappingService.getTrips();
+        Assertions.assertEquals("$7.30", trips.get(0).getChargeAmount());
+        Assertions.assertEquals("$2.70", trips.get(1).getChargeAmount(), "Second trip should be capped at $10.00 for the day.");
+    }
+
     @Test
     void testProcessTapsForPan() {
         String csvContent = """
@@ -114,8 +312,8 @@ class TransitCalculationServiceImplTest {
 
     @Test
     void testCreateTrip() {
-        Tap tapOn = new Tap(1L, LocalDateTime.parse("2024-01-01T12:00:00"), Tap.TapType.ON, "Stop1", "Company1", "Bus1", "123456");
-        Tap tapOff = new Tap(2L, LocalDateTime.parse("2024-01-01T12:15:00"), Tap.TapType.OFF, "Stop2", "Company1", "Bus1", "123456");
+        Tap tapOn = new Tap(1L, LocalDateTime.parse("2024-01-01T12:00:00"), Tap.TapType.ON, "Stop1", "Company1", "Bus1", PAN);
+        Tap tapOff = new Tap(2L, LocalDateTime.parse("2024-01-01T12:15:00"), Tap.TapType.OFF, "Stop2", "Company1", "Bus1", PAN);
 
         service.createTrip(tapOn, tapOff, true);
 
@@ -132,6 +330,24 @@ class TransitCalculationServiceImplTest {
         Assertions.assertEquals(900, duration, "Duration should be 900 seconds.");
     }
 
+    @Test
+    void testGetDownloadArtifact_CachedUntilTripsChange() {
+        Tap tapOn = new Tap(1L, LocalDateTime.parse("2024-01-01T12:00:00"), Tap.TapType.ON, "Stop1", "Company1", "Bus1", PAN);
+        Tap tapOff = new Tap(2L, LocalDateTime.parse("2024-01-01T12:15:00"), Tap.TapType.OFF, "Stop2", "Company1", "Bus1", PAN);
+        service.createTrip(tapOn, tapOff, true);
+
+        DownloadArtifact first = service.getDownloadArtifact();
+        Assertions.assertSame(first, service.getDownloadArtifact(), "Unchanged results should reuse the cached artifact.");
+        Assertions.assertNotNull(first.getGzipFile());
+        Assertions.assertTrue(first.getGzipFile().exists(), "Gzip copy should be written alongside the CSV.");
+
+        service.createTrip(tapOn, null, false);
+
+        DownloadArtifact second = service.getDownloadArtifact();
+        Assertions.assertNotEquals(first.getVersion(), second.getVersion(), "New trips should produce a new version.");
+        Assertions.assertEquals(service.getResultVersion(), second.getVersion());
+    }
+
     @Test
     void testGetProcessedCsv() {
         File file = service.getProcessedCsv();
@@ -140,6 +356,76 @@ class TransitCalculationServiceImplTest {
         Assertions.assertTrue(file.exists(), "Processed CSV file should exist.");
     }
 
+    @Test
+    void testCalculateFares() {
+        LocalDateTime on = LocalDateTime.parse("2024-01-01T12:00:00");
+        List<TapPair> pairs = List.of(
+                new TapPair("123456", "Company1", "Bus1", "Stop1", on, "Stop2", on.plusMinutes(15)),
+                new TapPair("654321", "Company1", "Bus1", "Stop2", on, null, null),
+                new TapPair("111111", "Company1", "Bus1", "Stop3", on, "Stop3", on.plusMinutes(5))
+        );
+
+        List<Trip> result = service.calculateFares(pairs);
+
+        // The same-stop pair is quoted as an upload would charge it: the ON and the OFF as two incomplete trips
+        Assertions.assertEquals(4, result.size());
+        Assertions.assertEquals("$3.25", result.get(0).getChargeAmount());
+        Assertions.assertEquals("COMPLETED", result.get(0).getStatus());
+        Assertions.assertEquals(900, result.get(0).getDurationSecs());
+        Assertions.assertEquals("$7.30", result.get(1).getChargeAmount());
+        Assertions.assertEquals("INCOMPLETE", result.get(1).getStatus());
+        Assertions.assertEquals("INCOMPLETE", result.get(2).getStatus());
+        Assertions.assertEquals("INCOMPLETE", result.get(3).getStatus());
+        Assertions.assertEquals("2024-01-01T12:05", result.get(3).getStarted());
+        Assertions.assertTrue(service.getTrips().isEmpty(), "Fare requests should not be stored as processed trips.");
+    }
+
+    @Test
+    void testCalculateFares_MatchesUpload() {
+        TransitCalculationServiceImpl expiringService = new TransitCalculationServiceImpl(
+                PartitionClient.standalone(), CheckpointStore.disabled(),
+                new PairingRules(PairingRules.SameStopRule.INCOMPLETE, PairingRules.StrayOffRule.INCOMPLETE, 60, 0, 0.0),
+                FareCapIndex.disabled(), DownloadCache.temporary(), TOKENIZER);
+        LocalDateTime on = LocalDateTime.parse("2024-01-01T12:00:00");
+        List<TapPair> pairs = List.of(
+                new TapPair("123456", "Company1", "Bus1", "Stop1", on, "Stop1", on.plusMinutes(5)),
+                new TapPair("654321", "Company1", "Bus1", "Stop1", on, "Stop2", on.plusMinutes(90)));
+        String csvContent = """
+                Id,DateTimeUTC,TapType,StopId,CompanyId,BusId,PAN
+                1,2024-01-01T12:00:00,ON,Stop1,Company1,Bus1,123456
+                2,2024-01-01T12:05:00,OFF,Stop1,Company1,Bus1,123456
+                3,2024-01-01T12:00:00,ON,Stop1,Company1,Bus1,654321
+                4,2024-01-01T13:30:00,OFF,Stop2,Company1,Bus1,654321
+                """;
+
+        List<Trip> quoted = expiringService.calculateFares(pairs);
+        expiringService.processCsv(mockMultipartFile(csvContent));
+
+        List<String> charged = expiringService.getTrips().stream().map(TransitCalculationServiceImplTest::describe).sorted().toList();
+        Assertions.assertEquals(4, quoted.size(), "Same-stop and over-duration pairs should each yield two trips.");
+        Assertions.assertEquals(charged, quoted.stream().map(TransitCalculationServiceImplTest::describe).sorted().toList());
+    }
+
+    private static String describe(Trip trip) {
+        return trip.getPan() + " " + trip.getStarted() + " " + trip.getFromStopId() + "-" + trip.getToStopId()
+                + " " + trip.getChargeAmount() + " " + trip.getStatus();
+    }
+
+    @Test
+    void testCalculateFares_EmptyBatch() {
+        Assertions.assertThrows(InvalidTapDataException.class, () -> service.calculateFares(List.of()));
+    }
+
+    @Test
+    void testCalculateFares_OffBeforeOn() {
+        LocalDateTime on = LocalDateTime.parse("2024-01-01T12:00:00");
+        List<TapPair> pairs = List.of(
+                new TapPair("123456", "Company1", "Bus1", "Stop1", on, "Stop2", on.minusMinutes(15))
+        );
+
+        Assertions.assertThrows(InvalidTapDataException.class, () -> service.calculateFares(pairs));
+    }
+
     // Helper method to mock MultipartFile
     private MultipartFile mockMultipartFile(String content) {
         MultipartFile file = Mockito.mock(MultipartFile.class);
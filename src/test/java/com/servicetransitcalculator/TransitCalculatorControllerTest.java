@@ -0,0 +1,118 @@
+package com.servicetransitcalculator;
+
+import com.servicetransitcalculator.controller.TransitCalculatorController;
+import com.servicetransitcalculator.model.DownloadArtifact;
+import com.servicetransitcalculator.model.TapPair;
+import com.servicetransitcalculator.model.Trip;
+import com.servicetransitcalculator.service.TransitCalculationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class TransitCalculatorControllerTest {
+
+    private TransitCalculationService service;
+    private SimpleMeterRegistry meterRegistry;
+    private TransitCalculatorController controller;
+    private MockMvc mockMvc;
+
+    @TempDir
+    Path downloadDir;
+
+    @BeforeEach
+    void setUp() {
+        service = mock(TransitCalculationService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        controller = new TransitCalculatorController(service, meterRegistry);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void testCalculateFares_RecordsLatency() {
+        LocalDateTime on = LocalDateTime.parse("2024-01-01T12:00:00");
+        List<TapPair> pairs = List.of(new TapPair("123456", "Company1", "Bus1", "Stop1", on, "Stop2", on.plusMinutes(15)));
+        when(service.calculateFares(anyList())).thenReturn(List.of(new Trip()));
+
+        controller.calculateFares(pairs);
+
+        Assertions.assertEquals(1, meterRegistry.get("transit.fare.latency").timer().count());
+    }
+
+    @Test
+    void testDownload_SetsValidators() throws Exception {
+        stubDownload(3);
+
+        mockMvc.perform(get("/transit/download"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, DownloadArtifact.etag(3, false)))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().string("Started,Finished\n"));
+    }
+
+    @Test
+    void testDownload_Gzip() throws Exception {
+        byte[] gzipped = Files.readAllBytes(stubDownload(3).getGzipFile().toPath());
+
+        mockMvc.perform(get("/transit/download").header(HttpHeaders.ACCEPT_ENCODING, "br, gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.ETAG, DownloadArtifact.etag(3, true)))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(content().bytes(gzipped));
+    }
+
+    @Test
+    void testDownload_NotModified() throws Exception {
+        stubDownload(3);
+
+        mockMvc.perform(get("/transit/download").header(HttpHeaders.IF_NONE_MATCH, "W/" + DownloadArtifact.etag(3, true)))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, DownloadArtifact.etag(3, false)))
+                .andExpect(content().bytes(new byte[0]));
+        verify(service, never()).getDownloadArtifact();
+
+        mockMvc.perform(get("/transit/download")
+                        .header(HttpHeaders.IF_NONE_MATCH, DownloadArtifact.etag(3, true))
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, DownloadArtifact.etag(3, true)))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING));
+        verify(service, never()).getDownloadArtifact();
+
+        mockMvc.perform(get("/transit/download").header(HttpHeaders.IF_NONE_MATCH, DownloadArtifact.etag(2, false)))
+                .andExpect(status().isOk());
+    }
+
+    private DownloadArtifact stubDownload(long version) throws Exception {
+        File csv = Files.writeString(downloadDir.resolve("trips.csv"), "Started,Finished\n").toFile();
+        File gzip = Files.write(downloadDir.resolve("trips.csv.gz"), new byte[]{0x1f, (byte) 0x8b, 8, 0}).toFile();
+        DownloadArtifact artifact = new DownloadArtifact(version, csv, gzip);
+        when(service.getResultVersion()).thenReturn(version);
+        when(service.isDownloadGzipped()).thenReturn(true);
+        when(service.getDownloadArtifact()).thenReturn(artifact);
+        return artifact;
+    }
+}
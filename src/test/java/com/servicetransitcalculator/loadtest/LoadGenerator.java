@@ -0,0 +1,126 @@
+package com.servicetransitcalculator.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Drives concurrent authenticated uploads and downloads against a running instance and
+ * reports throughput and latency percentiles.
+ *
+ * <p>Can be run against an already started instance, for example:
+ * <pre>
+ * java -cp target/test-classes com.servicetransitcalculator.loadtest.LoadGenerator \
+ *     http://localhost:9090 token1 8 50 20000
+ * </pre>
+ * Arguments are base URL, token, concurrent clients, requests per client and rows per upload.
+ */
+public class LoadGenerator {
+
+    private final String baseUrl;
+    private final String token;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    public LoadGenerator(String baseUrl, String token) {
+        this.baseUrl = baseUrl;
+        this.token = token;
+    }
+
+    /**
+     * Runs {@code clients} concurrent clients, each alternating {@code requestsPerClient}
+     * uploads of a freshly generated CSV with a download of the results.
+     */
+    public LoadReport run(TapCsvGenerator generator, int clients, int requestsPerClient, int rowsPerUpload) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<long[][]>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int c = 0; c < clients; c++) {
+                long seed = c;
+                results.add(executor.submit(() -> runClient(generator, seed, requestsPerClient, rowsPerUpload)));
+            }
+
+            List<Long> uploads = new ArrayList<>();
+            List<Long> downloads = new ArrayList<>();
+            for (Future<long[][]> result : results) {
+                long[][] latencies = result.get();
+                Arrays.stream(latencies[0]).forEach(uploads::add);
+                Arrays.stream(latencies[1]).forEach(downloads::add);
+            }
+            long elapsedNanos = System.nanoTime() - start;
+
+            return new LoadReport(uploads, downloads, (long) clients * requestsPerClient * rowsPerUpload, elapsedNanos);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long[][] runClient(TapCsvGenerator generator, long seed, int requests, int rowsPerUpload) throws Exception {
+        long[] uploadNanos = new long[requests];
+        long[] downloadNanos = new long[requests];
+        for (int i = 0; i < requests; i++) {
+            byte[] csv = generator.generate(rowsPerUpload, seed * 1_000_003L + i);
+
+            long start = System.nanoTime();
+            send(uploadRequest(csv));
+            uploadNanos[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            send(HttpRequest.newBuilder(URI.create(baseUrl + "/transit/download"))
+                    .header("Authorization", "Bearer " + token)
+                    .GET()
+                    .build());
+            downloadNanos[i] = System.nanoTime() - start;
+        }
+        return new long[][]{uploadNanos, downloadNanos};
+    }
+
+    private HttpRequest uploadRequest(byte[] csv) {
+        String boundary = "----loadtest" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(csv.length + 256);
+        body.writeBytes(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"taps.csv\"\r\n"
+                + "Content-Type: text/csv\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(csv);
+        body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/transit/upload"))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+    }
+
+    private void send(HttpRequest request) throws Exception {
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(request.method() + " " + request.uri() + " returned " + response.statusCode());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:9090";
+        String token = args.length > 1 ? args[1] : "token1";
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        int rows = args.length > 4 ? Integer.parseInt(args[4]) : 20_000;
+
+        TapCsvGenerator generator = new TapCsvGenerator(50_000, 1.1, 0.8, 0.1, true);
+        LoadReport report = new LoadGenerator(baseUrl, token).run(generator, clients, requests, rows);
+        System.out.println(generator);
+        System.out.println(report);
+    }
+}
@@ -0,0 +1,43 @@
+package com.servicetransitcalculator.loadtest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+/**
+ * End-to-end throughput check against a locally started instance. Skipped by default; run with
+ * {@code mvn test -Dtest=LoadGeneratorTest -Dloadtest=true}, optionally setting
+ * {@code -Dloadtest.min-rows-per-second} and {@code -Dloadtest.max-upload-p99-ms} to fail the
+ * run when results fall below a baseline.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "logging.request-response.enabled=false")
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class LoadGeneratorTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void testUploadAndDownloadThroughput() throws Exception {
+        int clients = Integer.getInteger("loadtest.clients", 4);
+        int requests = Integer.getInteger("loadtest.requests", 10);
+        int rows = Integer.getInteger("loadtest.rows", 10_000);
+        TapCsvGenerator generator = new TapCsvGenerator(
+                Integer.getInteger("loadtest.pans", 10_000),
+                Double.parseDouble(System.getProperty("loadtest.pan-skew", "1.1")),
+                Double.parseDouble(System.getProperty("loadtest.stop-skew", "0.8")),
+                Double.parseDouble(System.getProperty("loadtest.incomplete-ratio", "0.1")),
+                Boolean.parseBoolean(System.getProperty("loadtest.mixed-date-formats", "true")));
+
+        LoadReport report = new LoadGenerator("http://localhost:" + port, "token1")
+                .run(generator, clients, requests, rows);
+
+        System.out.println(generator);
+        System.out.println(report);
+        report.assertMeetsBaseline(
+                Double.parseDouble(System.getProperty("loadtest.min-rows-per-second", "0")),
+                Double.parseDouble(System.getProperty("loadtest.max-upload-p99-ms", String.valueOf(Double.MAX_VALUE))));
+    }
+}
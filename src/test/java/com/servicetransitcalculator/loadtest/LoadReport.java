@@ -0,0 +1,74 @@
+package com.servicetransitcalculator.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Throughput and latency percentiles of a load run.
+ */
+public class LoadReport {
+
+    private final List<Long> uploadNanos;
+    private final List<Long> downloadNanos;
+    private final long rows;
+    private final long elapsedNanos;
+
+    public LoadReport(List<Long> uploadNanos, List<Long> downloadNanos, long rows, long elapsedNanos) {
+        this.uploadNanos = sorted(uploadNanos);
+        this.downloadNanos = sorted(downloadNanos);
+        this.rows = rows;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public double rowsPerSecond() {
+        return rows / (elapsedNanos / 1e9);
+    }
+
+    public double uploadMillis(double percentile) {
+        return percentile(uploadNanos, percentile);
+    }
+
+    public double downloadMillis(double percentile) {
+        return percentile(downloadNanos, percentile);
+    }
+
+    /**
+     * Fails when throughput is below, or upload p99 latency above, the given baseline.
+     */
+    public void assertMeetsBaseline(double minRowsPerSecond, double maxUploadP99Millis) {
+        if (rowsPerSecond() < minRowsPerSecond) {
+            throw new AssertionError(String.format("Throughput %.0f rows/s is below baseline %.0f rows/s.",
+                    rowsPerSecond(), minRowsPerSecond));
+        }
+        if (uploadMillis(0.99) > maxUploadP99Millis) {
+            throw new AssertionError(String.format("Upload p99 %.1f ms is above baseline %.1f ms.",
+                    uploadMillis(0.99), maxUploadP99Millis));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Throughput: %.0f rows/s over %d uploads%n"
+                        + "Upload   p50=%.1f ms p99=%.1f ms p999=%.1f ms%n"
+                        + "Download p50=%.1f ms p99=%.1f ms p999=%.1f ms",
+                rowsPerSecond(), uploadNanos.size(),
+                uploadMillis(0.5), uploadMillis(0.99), uploadMillis(0.999),
+                downloadMillis(0.5), downloadMillis(0.99), downloadMillis(0.999));
+    }
+
+    // Nearest-rank percentile
+    private static double percentile(List<Long> sortedNanos, double percentile) {
+        if (sortedNanos.isEmpty()) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sortedNanos.size()) - 1;
+        return sortedNanos.get(Math.max(0, rank)) / 1e6;
+    }
+
+    private static List<Long> sorted(List<Long> values) {
+        List<Long> copy = new ArrayList<>(values);
+        Collections.sort(copy);
+        return copy;
+    }
+}
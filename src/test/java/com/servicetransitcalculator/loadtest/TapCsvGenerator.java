@@ -0,0 +1,139 @@
+package com.servicetransitcalculator.loadtest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+/**
+ * Synthesizes tap CSVs in the upload format. PANs and routes are drawn from Zipf-like
+ * distributions with separate exponents, so a few cards and routes dominate. Routes come
+ * from the service's fare table, so completed trips are priced rather than logged as
+ * missing fares. A card starts its next trip only after its previous one has ended, so the
+ * configured share of trips without an OFF tap is the share the service reports incomplete.
+ * Dates can be written in any of the accepted formats.
+ */
+public class TapCsvGenerator {
+
+    private static final DateTimeFormatter[] DATE_FORMATS = {
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm"),
+            DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss"),
+            DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm")
+    };
+
+    // Origin and destination of every route in the service's fare table
+    private static final String[][] ROUTES = {
+            {"Stop1", "Stop2"},
+            {"Stop2", "Stop3"},
+            {"Stop1", "Stop3"}
+    };
+
+    private final int panCount;
+    private final double panSkew;
+    private final double stopSkew;
+    private final double incompleteRatio;
+    private final boolean mixedDateFormats;
+    private final double[] panWeights;
+    private final double[] routeWeights;
+
+    /**
+     * @param panCount         number of distinct cards
+     * @param panSkew          Zipf exponent for card popularity; 0 is uniform
+     * @param stopSkew         Zipf exponent for route popularity; 0 is uniform
+     * @param incompleteRatio  share of trips written without an OFF tap
+     * @param mixedDateFormats whether to rotate through all accepted date formats
+     */
+    public TapCsvGenerator(int panCount, double panSkew, double stopSkew, double incompleteRatio, boolean mixedDateFormats) {
+        this.panCount = panCount;
+        this.panSkew = panSkew;
+        this.stopSkew = stopSkew;
+        this.incompleteRatio = incompleteRatio;
+        this.mixedDateFormats = mixedDateFormats;
+        this.panWeights = cumulativeZipf(panCount, panSkew);
+        this.routeWeights = cumulativeZipf(ROUTES.length, stopSkew);
+    }
+
+    /**
+     * Generates a CSV with a header and roughly the requested number of tap rows.
+     */
+    public byte[] generate(int rows, long seed) {
+        Random random = new Random(seed);
+        StringBuilder csv = new StringBuilder(rows * 64);
+        csv.append("ID,DateTimeUTC,TapType,StopId,CompanyId,BusId,PAN\n");
+
+        // End of each card's latest trip; a busy card's next trip is pushed back until after it
+        LocalDateTime[] busyUntil = new LocalDateTime[panCount];
+        LocalDateTime clock = LocalDateTime.of(2024, 1, 1, 6, 0);
+        long id = 1;
+        while (id <= rows) {
+            int card = pick(panWeights, random);
+            String pan = String.valueOf(4_000_000_000_000_000L + card);
+            int route = pick(routeWeights, random);
+            String company = "Company" + (route % 3 + 1);
+            String bus = "Bus" + (random.nextInt(7) + 1);
+
+            clock = clock.plusSeconds(1 + random.nextInt(30));
+            LocalDateTime start = clock;
+            if (busyUntil[card] != null && !start.isAfter(busyUntil[card].plusMinutes(1))) {
+                // At least a minute apart, so formats without seconds keep the taps in order
+                start = busyUntil[card].plusMinutes(1 + random.nextInt(30));
+            }
+            appendRow(csv, id++, start, "ON", ROUTES[route][0], company, bus, pan, random);
+
+            LocalDateTime end = start;
+            if (id <= rows && random.nextDouble() >= incompleteRatio) {
+                end = start.plusMinutes(5 + random.nextInt(40));
+                appendRow(csv, id++, end, "OFF", ROUTES[route][1], company, bus, pan, random);
+            }
+            busyUntil[card] = end;
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "pans=" + panCount + ", panSkew=" + panSkew + ", stopSkew=" + stopSkew
+                + ", incompleteRatio=" + incompleteRatio + ", mixedDateFormats=" + mixedDateFormats;
+    }
+
+    private void appendRow(StringBuilder csv, long id, LocalDateTime time, String tapType, String stop,
+                           String company, String bus, String pan, Random random) {
+        DateTimeFormatter format = mixedDateFormats ? DATE_FORMATS[random.nextInt(DATE_FORMATS.length)] : DATE_FORMATS[0];
+        csv.append(id).append(',')
+                .append(time.format(format)).append(',')
+                .append(tapType).append(',')
+                .append(stop).append(',')
+                .append(company).append(',')
+                .append(bus).append(',')
+                .append(pan).append('\n');
+    }
+
+    private static double[] cumulativeZipf(int n, double skew) {
+        double[] cumulative = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= total;
+        }
+        return cumulative;
+    }
+
+    private static int pick(double[] cumulative, Random random) {
+        double target = random.nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
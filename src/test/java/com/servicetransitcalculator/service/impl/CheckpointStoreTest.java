@@ -0,0 +1,177 @@
+package com.servicetransitcalculator.service.impl;
+
+import com.servicetransitcalculator.model.RejectReason;
+import com.servicetransitcalculator.model.Tap;
+import com.servicetransitcalculator.model.Trip;
+import com.servicetransitcalculator.model.UploadStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+class CheckpointStoreTest {
+
+    private static final PanTokenizer TOKENIZER = new PanTokenizer("test-key");
+
+    private static final String UPLOAD_ID = "interrupted-upload";
+
+    // Rows 2-4 are covered by the checkpoint; rows 5-7 still have to be read
+    private static final String INPUT = """
+            Id,DateTimeUTC,TapType,StopId,CompanyId,BusId,PAN
+            1,2024-01-01T08:00:00,ON,Stop1,Company1,Bus1,111111
+            2,2024-01-01T08:15:00,OFF,Stop2,Company1,Bus1,111111
+            3,InvalidDate,ON,Stop1,Company1,Bus1,111111
+            4,2024-01-01T09:00:00,ON,Stop1,Company1,Bus1,111111
+            5,2024-01-01T09:20:00,OFF,Stop3,Company1,Bus1,111111
+            6,InvalidDate,OFF,Stop3,Company1,Bus1,111111
+            """;
+
+    @TempDir
+    Path checkpointDir;
+
+    @Test
+    void testResumeFromPartialCheckpoint() throws Exception {
+        CheckpointStore store = new CheckpointStore(true, checkpointDir.toString(), 1000);
+        writeInterruptedUpload(store);
+        TransitCalculationServiceImpl restarted = new TransitCalculationServiceImpl(
+                PartitionClient.standalone(), store, PairingRules.defaults(), FareCapIndex.disabled(),
+                DownloadCache.temporary(), TOKENIZER);
+
+        restarted.resumeUnfinishedUploads();
+
+        // The first trip comes from the checkpointed taps, which end at Stop3 rather than the file's Stop2
+        List<Trip> trips = restarted.getTrips();
+        Assertions.assertEquals(2, trips.size(), "Rows covered by the checkpoint should not be read again.");
+        Assertions.assertEquals("Stop3", trips.get(0).getToStopId());
+        Assertions.assertEquals("Stop3", trips.get(1).getToStopId());
+        Assertions.assertTrue(trips.stream().noneMatch(trip -> "Stop9".equals(trip.getFromStopId())),
+                "Segments written after the last checkpoint should be ignored.");
+
+        UploadStatus status = restarted.getUploadStatus(UPLOAD_ID);
+        Assertions.assertEquals("COMPLETED", status.getState());
+        Assertions.assertEquals(6, status.getRowsRead());
+        Assertions.assertEquals(2, status.getRowsRejected());
+        Assertions.assertEquals(2L, status.getRejectedByReason().get(RejectReason.INVALID_DATE));
+    }
+
+    @Test
+    void testResumeInPartitionedModeResendsSameBatch() throws Exception {
+        CheckpointStore store = new CheckpointStore(true, checkpointDir.toString(), 1000);
+        writeInterruptedUpload(store);
+        RecordingPartitionClient partitionClient = new RecordingPartitionClient();
+        TransitCalculationServiceImpl restarted = new TransitCalculationServiceImpl(
+                partitionClient, store, PairingRules.defaults(), FareCapIndex.disabled(),
+                DownloadCache.temporary(), TOKENIZER);
+
+        restarted.resumeUnfinishedUploads();
+
+        // The coordinator splits the whole input again rather than trusting a checkpoint of parsed taps
+        Assertions.assertEquals(List.of(6L), partitionClient.rows);
+        Assertions.assertEquals(6, restarted.getUploadStatus(UPLOAD_ID).getRowsRead());
+
+        // Sending the same content again uses the same batch, so the nodes can skip what they already priced
+        restarted.processCsv(new MockMultipartFile("file", "taps.csv", "text/csv", INPUT.getBytes()));
+        Assertions.assertEquals(2, partitionClient.batchIds.size());
+        Assertions.assertEquals(partitionClient.batchIds.get(0), partitionClient.batchIds.get(1));
+    }
+
+    @Test
+    void testResumeAfterRestartWithGeneratedKey() throws Exception {
+        CheckpointStore store = new CheckpointStore(true, checkpointDir.toString(), 1000);
+        String keyFile = checkpointDir.resolve("pan-token.key").toString();
+        PanTokenizer beforeRestart = new PanTokenizer("", keyFile, List.of());
+        store.spool(UPLOAD_ID, new ByteArrayInputStream("""
+                Id,DateTimeUTC,TapType,StopId,CompanyId,BusId,PAN
+                1,2024-01-01T08:00:00,ON,Stop1,Company1,Bus1,111111
+                2,2024-01-01T08:15:00,OFF,Stop2,Company1,Bus1,111111
+                """.getBytes()));
+        store.save(UPLOAD_ID, 1, new long[RejectReason.values().length], List.of(new Tap(1L,
+                LocalDateTime.parse("2024-01-01T08:00:00"), Tap.TapType.ON, "Stop1", "Company1", "Bus1",
+                beforeRestart.tokenize("111111"))));
+
+        TransitCalculationServiceImpl restarted = new TransitCalculationServiceImpl(
+                PartitionClient.standalone(), store, PairingRules.defaults(), FareCapIndex.disabled(),
+                DownloadCache.temporary(), new PanTokenizer("", keyFile, List.of()));
+        restarted.resumeUnfinishedUploads();
+
+        List<Trip> trips = restarted.getTrips();
+        Assertions.assertEquals(1, trips.size(), "Checkpointed and re-read taps of a card should still pair.");
+        Assertions.assertEquals("COMPLETED", trips.get(0).getStatus());
+    }
+
+    @Test
+    void testSmallUploadsAreNotSpooled() throws Exception {
+        CheckpointStore store = new CheckpointStore(true, checkpointDir.toString(), 1, 1);
+        TransitCalculationServiceImpl service = new TransitCalculationServiceImpl(
+                PartitionClient.standalone(), store, PairingRules.defaults(), FareCapIndex.disabled(),
+                DownloadCache.temporary(), TOKENIZER);
+
+        service.processCsv(new MockMultipartFile("file", "taps.csv", "text/csv", INPUT.getBytes()));
+
+        Assertions.assertFalse(store.shouldCheckpoint(INPUT.length()));
+        Assertions.assertEquals(2, service.getTrips().size());
+        try (var files = Files.list(checkpointDir)) {
+            Assertions.assertEquals(0, files.count(), "Uploads below the minimum size should not be spooled.");
+        }
+    }
+
+    @Test
+    void testDirectoryOfAnotherInstanceIsNotUsed() throws Exception {
+        CheckpointStore owner = new CheckpointStore(true, checkpointDir.toString(), 1000);
+        Assertions.assertTrue(owner.unfinishedUploads().isEmpty());
+        writeInterruptedUpload(owner);
+        CheckpointStore other = new CheckpointStore(true, checkpointDir.toString(), 1000);
+
+        Assertions.assertEquals(List.of(), other.unfinishedUploads(), "Only the owner may resume its uploads.");
+        Assertions.assertFalse(other.shouldCheckpoint(Long.MAX_VALUE), "Only the owner may spool into its directory.");
+
+        owner.close();
+        Assertions.assertEquals(List.of(UPLOAD_ID), other.unfinishedUploads());
+    }
+
+    private void writeInterruptedUpload(CheckpointStore store) throws Exception {
+        store.spool(UPLOAD_ID, new ByteArrayInputStream(INPUT.getBytes()));
+
+        long[] rejected = new long[RejectReason.values().length];
+        store.save(UPLOAD_ID, 2, rejected, List.of(
+                tap(1, "2024-01-01T08:00:00", Tap.TapType.ON, "Stop1"),
+                tap(2, "2024-01-01T08:15:00", Tap.TapType.OFF, "Stop3")));
+        rejected[RejectReason.INVALID_DATE.ordinal()]++;
+        store.save(UPLOAD_ID, 3, rejected, List.of());
+
+        // Crash while writing the next checkpoint: its segment exists but the progress file was never replaced
+        Path progress = checkpointDir.resolve(UPLOAD_ID).resolve("checkpoint.properties");
+        Path saved = Files.copy(progress, checkpointDir.resolve("checkpoint.properties.saved"));
+        store.save(UPLOAD_ID, 4, rejected, List.of(tap(4, "2024-01-01T09:00:00", Tap.TapType.ON, "Stop9")));
+        Files.move(saved, progress, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static Tap tap(long id, String dateTime, Tap.TapType type, String stopId) {
+        return new Tap(id, LocalDateTime.parse(dateTime), type, stopId, "Company1", "Bus1", TOKENIZER.tokenize("111111"));
+    }
+
+    private static class RecordingPartitionClient extends PartitionClient {
+
+        private final List<String> batchIds = new ArrayList<>();
+        private final List<Long> rows = new ArrayList<>();
+
+        RecordingPartitionClient() {
+            super(List.of("http://node-a", "http://node-b"), "token1");
+        }
+
+        @Override
+        List<String[]> dispatch(String batchId, Batch batch) {
+            batchIds.add(batchId);
+            rows.add(batch.getRows());
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.servicetransitcalculator.service.impl;
+
+import com.servicetransitcalculator.model.DownloadArtifact;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class DownloadCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testInstancesSharingBaseDirDoNotShareFiles() throws Exception {
+        DownloadCache first = new DownloadCache(dir.toString(), true);
+        DownloadCache second = new DownloadCache(dir.toString(), true);
+
+        // Both instances are at result version 1, which used to name the same file
+        DownloadArtifact firstArtifact = first.get(1, file -> Files.writeString(file.toPath(), "first\n"));
+        DownloadArtifact secondArtifact = second.get(1, file -> Files.writeString(file.toPath(), "second\n"));
+
+        Assertions.assertNotEquals(firstArtifact.getCsvFile(), secondArtifact.getCsvFile());
+        Assertions.assertEquals("first\n", Files.readString(firstArtifact.getCsvFile().toPath()));
+        Assertions.assertEquals("second\n", Files.readString(secondArtifact.getCsvFile().toPath()));
+    }
+
+    @Test
+    void testCloseRemovesInstanceDirectory() throws Exception {
+        DownloadCache cache = new DownloadCache(dir.toString(), true);
+        cache.get(1, file -> Files.writeString(file.toPath(), "trips\n"));
+        cache.writeUnversioned(file -> Files.writeString(file.toPath(), "merged\n"));
+
+        cache.close();
+
+        File[] left = dir.toFile().listFiles();
+        Assertions.assertEquals(0, left == null ? 0 : left.length);
+    }
+}
@@ -0,0 +1,52 @@
+package com.servicetransitcalculator.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class IngestStatsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final IngestStats.Meters meters = new IngestStats.Meters(registry);
+
+    @Test
+    void testCountsAndRestore() {
+        IngestStats stats = new IngestStats(meters);
+        stats.rowRead();
+        stats.rowRead();
+        stats.rowRejected();
+
+        Assertions.assertEquals(2, stats.getRows());
+        Assertions.assertEquals(1, stats.getRejected());
+
+        stats.restore(100, 7);
+        stats.rowRead();
+        Assertions.assertEquals(101, stats.getRows());
+        Assertions.assertEquals(7, stats.getRejected());
+    }
+
+    @Test
+    void testReportPublishesMetrics() {
+        IngestStats stats = new IngestStats(meters);
+        for (int i = 0; i < 10; i++) {
+            stats.rowRead();
+        }
+
+        stats.report();
+
+        Assertions.assertEquals(1, registry.get("transit.ingest.gc.pause").timer().count());
+        long allocationSamples = registry.get("transit.ingest.allocation.per.row").summary().count();
+        Assertions.assertTrue(allocationSamples <= 1, "At most one allocation sample per report.");
+    }
+
+    @Test
+    void testReportSkipsAllocationWhenOnlyRestoredRows() {
+        IngestStats stats = new IngestStats(meters);
+        stats.restore(50, 0);
+
+        stats.report();
+
+        Assertions.assertEquals(0, registry.get("transit.ingest.allocation.per.row").summary().count(),
+                "Rows carried over from a checkpoint say nothing about this run's allocation.");
+    }
+}
@@ -0,0 +1,36 @@
+package com.servicetransitcalculator.service.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+class LogRateLimiterTest {
+
+    @Test
+    void testLimitsPerSecondAndCountsSuppressed() {
+        AtomicLong clock = new AtomicLong(1_000);
+        LogRateLimiter limiter = new LogRateLimiter(3, clock::get);
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(limiter.tryAcquire());
+        }
+        Assertions.assertFalse(limiter.tryAcquire());
+        Assertions.assertFalse(limiter.tryAcquire());
+        Assertions.assertEquals(2, limiter.takeSuppressed());
+        Assertions.assertEquals(0, limiter.takeSuppressed(), "Taking the count should reset it.");
+    }
+
+    @Test
+    void testNewSecondResetsBudget() {
+        AtomicLong clock = new AtomicLong(1_000);
+        LogRateLimiter limiter = new LogRateLimiter(1, clock::get);
+
+        Assertions.assertTrue(limiter.tryAcquire());
+        Assertions.assertFalse(limiter.tryAcquire());
+
+        clock.set(2_000);
+        Assertions.assertTrue(limiter.tryAcquire(), "A new second should allow logging again.");
+        Assertions.assertEquals(1, limiter.takeSuppressed(), "Suppressions from the previous second are kept until taken.");
+    }
+}
@@ -0,0 +1,59 @@
+package com.servicetransitcalculator.service.impl;
+
+import com.servicetransitcalculator.model.RejectReason;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class RejectedRecordWriterTest {
+
+    private static final String[] RECORD = {"1", "InvalidDate", "ON", "Stop1", "Company1", "Bus1", "****56"};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testResumeDropsRowsAfterCheckpoint() throws Exception {
+        File file = dir.resolve("rejected.csv").toFile();
+        RejectedRecordWriter first = new RejectedRecordWriter(file, RejectedRecordWriter.NEW_REPORT, 100, 100, Runnable::run);
+        for (long row = 2; row <= 6; row++) {
+            first.submit(row, RejectReason.INVALID_DATE, "detail", RECORD);
+        }
+        first.close();
+
+        // The checkpoint covered rows up to 4, so rows 5 and 6 are read and rejected again
+        RejectedRecordWriter resumed = new RejectedRecordWriter(file, 4, 100, 100, Runnable::run);
+        resumed.submit(5, RejectReason.INVALID_DATE, "detail", RECORD);
+        resumed.submit(6, RejectReason.INVALID_DATE, "detail", RECORD);
+        resumed.close();
+
+        List<String> lines = Files.readAllLines(file.toPath());
+        Assertions.assertEquals(6, lines.size(), "Report should hold a header and each row once: " + lines);
+        for (int i = 1; i < lines.size(); i++) {
+            Assertions.assertTrue(lines.get(i).startsWith("\"" + (i + 1) + "\""), lines.get(i));
+        }
+    }
+
+    @Test
+    void testResumeKeepsLimitAcrossRestart() throws Exception {
+        File file = dir.resolve("rejected.csv").toFile();
+        RejectedRecordWriter first = new RejectedRecordWriter(file, RejectedRecordWriter.NEW_REPORT, 100, 3, Runnable::run);
+        first.submit(2, RejectReason.INVALID_DATE, "detail", RECORD);
+        first.submit(3, RejectReason.INVALID_DATE, "detail", RECORD);
+        first.close();
+
+        RejectedRecordWriter resumed = new RejectedRecordWriter(file, 3, 100, 3, Runnable::run);
+        resumed.submit(4, RejectReason.INVALID_DATE, "detail", RECORD);
+        resumed.submit(5, RejectReason.INVALID_DATE, "detail", RECORD);
+        resumed.close();
+
+        Assertions.assertTrue(resumed.isFinished());
+        Assertions.assertEquals(4, Files.readAllLines(file.toPath()).size(), "Limit should count rows written before the restart.");
+        Assertions.assertEquals(1, resumed.getDropped());
+    }
+}